@@ -0,0 +1,92 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// prices baskets of different sizes, product variety and discount mixes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BasketPricingBenchmark {
+
+    public enum DiscountMix {
+        NONE,
+        TEN_PERCENT_OFF,
+        BUY_1_GET_1_FREE,
+        // every other product code gets one of both discounts
+        MIXED
+    }
+
+    // number of scanned units
+    @Param({ "1", "100", "10000", "100000" })
+    private int basketSize;
+
+    @Param({ "1", "10", "1000" })
+    private int distinctSkus;
+
+    @Param({ "NONE", "TEN_PERCENT_OFF", "BUY_1_GET_1_FREE", "MIXED" })
+    private DiscountMix discountMix;
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    private Basket basket;
+
+    @Setup
+    public void createBasket() {
+        var skus = Math.min(distinctSkus, basketSize);
+        var products = new Product[skus];
+        for (var i = 0; i < skus; i++) {
+            products[i] = new Product();
+            products[i].setCode(String.format("P%07d", i));
+            products[i].setPrice(BigDecimal.valueOf(100 + i % 900, 2));
+        }
+        basket = new Basket();
+        for (var i = 0; i < basketSize; i++) {
+            basket.addProduct(products[i % skus]);
+        }
+        for (var i = 0; i < skus; i++) {
+            var type = switch (discountMix) {
+                case NONE -> null;
+                case TEN_PERCENT_OFF -> DiscountType.TEN_PERCENT_OFF;
+                case BUY_1_GET_1_FREE -> DiscountType.BUY_1_GET_1_FREE;
+                case MIXED -> i % 2 == 0 ? DiscountType.TEN_PERCENT_OFF : DiscountType.BUY_1_GET_1_FREE;
+            };
+            if (type != null) {
+                var discount = new Discount();
+                discount.setId((long) i);
+                discount.setType(type);
+                discount.setProductCode(products[i].getCode());
+                basket.addDiscount(discount);
+            }
+        }
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotal() {
+        return pricingEngine.calculateTotal(basket);
+    }
+
+    @Benchmark
+    public BigDecimal runningTotal() {
+        return basket.getTotal();
+    }
+}
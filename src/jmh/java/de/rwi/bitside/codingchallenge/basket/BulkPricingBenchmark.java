@@ -0,0 +1,82 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// a page of baskets priced one after another against priced on the fork-join pool
+// of the pricing engine, the speedup is bounded by the number of cores
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BulkPricingBenchmark {
+
+    @Param({ "10", "100" })
+    private int basketSize;
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    private List<Basket> baskets;
+
+    @Setup
+    public void createBaskets() {
+        baskets = new ArrayList<>();
+        for (var b = 0; b < BasketService.MAX_PAGE_SIZE; b++) {
+            var basket = new Basket();
+            for (var i = 0; i < basketSize; i++) {
+                var product = new Product();
+                product.setCode(String.format("P%07d", i % 10));
+                product.setPrice(BigDecimal.valueOf(100 + i % 10, 2));
+                basket.addProduct(product);
+            }
+            for (var i = 0; i < 10; i++) {
+                var discount = new Discount();
+                discount.setId((long) i);
+                discount.setType(i % 2 == 0 ? DiscountType.TEN_PERCENT_OFF : DiscountType.BUY_1_GET_1_FREE);
+                discount.setProductCode(String.format("P%07d", i));
+                basket.addDiscount(discount);
+            }
+            baskets.add(basket);
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        pricingEngine.shutdown();
+    }
+
+    @Benchmark
+    public long[] sequential() {
+        var totals = new long[baskets.size()];
+        for (var i = 0; i < totals.length; i++) {
+            totals[i] = pricingEngine.calculateTotalCents(baskets.get(i));
+        }
+        return totals;
+    }
+
+    @Benchmark
+    public long[] parallel() {
+        return pricingEngine.calculateTotalsCents(baskets);
+    }
+}
@@ -0,0 +1,51 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountEvaluator;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+
+// discount math of a single line in isolation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DiscountTypeBenchmark {
+
+    @Param({ "1", "100", "100000" })
+    private int quantity;
+
+    @Param({ "TEN_PERCENT_OFF", "BUY_1_GET_1_FREE", "THREE_FOR_TWO", "FIFTY_CENTS_OFF" })
+    private DiscountType discountType;
+
+    private final long unitPriceCents = 1299;
+
+    private DiscountEvaluator evaluator;
+
+    @Setup
+    public void compileDiscount() {
+        var discount = new Discount();
+        discount.setType(discountType);
+        evaluator = discount.getEvaluator();
+    }
+
+    @Benchmark
+    public long calculateDiscount() {
+        return evaluator.calculateSavings(unitPriceCents, quantity);
+    }
+}
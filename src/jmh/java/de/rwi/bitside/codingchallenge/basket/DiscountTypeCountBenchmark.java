@@ -0,0 +1,74 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// prices the same basket with discounts of one up to all discount types, the cost
+// per basket should not grow with the number of types in use
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DiscountTypeCountBenchmark {
+
+    // number of scanned units
+    @Param({ "100", "10000" })
+    private int basketSize;
+
+    @Param({ "1000" })
+    private int distinctSkus;
+
+    // the first discount types of DiscountType in use, one discount per product code
+    @Param({ "1", "2", "3", "4" })
+    private int discountTypes;
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    private Basket basket;
+
+    @Setup
+    public void createBasket() {
+        var skus = Math.min(distinctSkus, basketSize);
+        var products = new Product[skus];
+        for (var i = 0; i < skus; i++) {
+            products[i] = new Product();
+            products[i].setCode(String.format("P%07d", i));
+            products[i].setPrice(BigDecimal.valueOf(100 + i % 900, 2));
+        }
+        basket = new Basket();
+        for (var i = 0; i < basketSize; i++) {
+            basket.addProduct(products[i % skus]);
+        }
+        var types = DiscountType.values();
+        for (var i = 0; i < skus; i++) {
+            var discount = new Discount();
+            discount.setId((long) i);
+            discount.setType(types[i % Math.min(discountTypes, types.length)]);
+            discount.setProductCode(products[i].getCode());
+            basket.addDiscount(discount);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotal() {
+        return pricingEngine.calculateTotal(basket);
+    }
+}
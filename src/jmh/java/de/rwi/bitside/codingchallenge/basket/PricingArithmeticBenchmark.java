@@ -0,0 +1,83 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// original BigDecimal pricing on scanned products against long cents pricing on
+// line items, both on the same basket with a mix of both discount types
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PricingArithmeticBenchmark {
+
+    @Param({ "10", "1000" })
+    private int basketSize;
+
+    @Param({ "1", "10" })
+    private int distinctSkus;
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    private List<Product> scannedProducts;
+
+    private List<Discount> discounts;
+
+    private Basket basket;
+
+    @Setup
+    public void createBasket() {
+        scannedProducts = new ArrayList<>();
+        discounts = new ArrayList<>();
+        basket = new Basket();
+        var skus = Math.min(distinctSkus, basketSize);
+        var products = new Product[skus];
+        for (var i = 0; i < skus; i++) {
+            products[i] = new Product();
+            products[i].setCode(String.format("P%07d", i));
+            products[i].setPrice(BigDecimal.valueOf(100 + i % 900, 2));
+        }
+        for (var i = 0; i < basketSize; i++) {
+            scannedProducts.add(products[i % skus]);
+            basket.addProduct(products[i % skus]);
+        }
+        for (var i = 0; i < skus; i++) {
+            var discount = new Discount();
+            discount.setId((long) i);
+            discount.setType(i % 2 == 0 ? DiscountType.TEN_PERCENT_OFF : DiscountType.BUY_1_GET_1_FREE);
+            discount.setProductCode(products[i].getCode());
+            discounts.add(discount);
+            basket.addDiscount(discount);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalReference() {
+        return ReferencePricing.calculateTotal(scannedProducts, discounts);
+    }
+
+    @Benchmark
+    public long longCents() {
+        return pricingEngine.calculateTotalCents(basket);
+    }
+}
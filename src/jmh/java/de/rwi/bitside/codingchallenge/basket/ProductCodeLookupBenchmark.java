@@ -0,0 +1,72 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.rwi.bitside.codingchallenge.product.ProductCode;
+import de.rwi.bitside.codingchallenge.product.ProductCodeMap;
+
+// looks up every code of a catalog by string in a HashMap against by packed code in
+// a ProductCodeMap, codes are fresh strings as read from a request, so their hash
+// codes are not cached yet
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProductCodeLookupBenchmark {
+
+    @Param({ "1000", "1000000" })
+    private int catalogSize;
+
+    private Map<String, Long> pricesByCode;
+
+    private ProductCodeMap<Long> pricesByPackedCode;
+
+    private char[][] codes;
+
+    @Setup
+    public void createCatalog() {
+        pricesByCode = new HashMap<>();
+        pricesByPackedCode = new ProductCodeMap<>();
+        codes = new char[catalogSize][];
+        for (var i = 0; i < catalogSize; i++) {
+            var code = String.format("P%07d", i);
+            pricesByCode.put(code, (long) i);
+            pricesByPackedCode.put(ProductCode.pack(code), (long) i);
+            codes[i] = code.toCharArray();
+        }
+    }
+
+    @Benchmark
+    public long stringKeys() {
+        var sum = 0L;
+        for (var code : codes) {
+            sum += pricesByCode.get(new String(code));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long packedKeys() {
+        var sum = 0L;
+        for (var code : codes) {
+            sum += pricesByPackedCode.get(ProductCode.pack(new String(code)));
+        }
+        return sum;
+    }
+}
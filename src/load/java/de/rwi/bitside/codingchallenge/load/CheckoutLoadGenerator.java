@@ -0,0 +1,254 @@
+package de.rwi.bitside.codingchallenge.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import de.rwi.bitside.codingchallenge.CodingchallengeApplication;
+
+// drives the checkout flow over HTTP with concurrent clients, every client creates a
+// basket, scans a burst of products, adds a discount, gets the total and deletes the
+// basket again, over and over, and reports throughput and latency percentiles per
+// endpoint, the application is started with a fresh in-memory database unless a
+// base url is given, exits with 1 if any request or any client failed
+public class CheckoutLoadGenerator {
+
+    private final Map<String, String> options = new HashMap<>(Map.of(
+            "products", "100",
+            "discounts", "50",
+            "clients", "50",
+            "checkouts", "20",
+            "scans", "10"));
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private HttpClient client;
+
+    private String baseUrl;
+
+    public static void main(String[] args) throws Exception {
+        var generator = new CheckoutLoadGenerator();
+        for (var arg : args) {
+            var option = arg.replaceFirst("^--", "").split("=", 2);
+            generator.options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        System.exit(generator.run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        ServletWebServerApplicationContext context = null;
+        if (options.containsKey("base-url")) {
+            baseUrl = options.get("base-url");
+        } else {
+            // a devtools restart would run this generator once more
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(
+                    CodingchallengeApplication.class)
+                    .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID());
+            baseUrl = "http://localhost:" + context.getWebServer().getPort();
+        }
+        try (var httpClient = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+            client = httpClient;
+            var productCodes = seedProducts(intOption("products"));
+            var discountIds = seedDiscounts(productCodes, intOption("discounts"));
+            if (!succeeded()) {
+                System.out.println("Failed to create products and discounts");
+                return false;
+            }
+            endpoints.clear();
+
+            var start = System.nanoTime();
+            var results = new ArrayList<Future<?>>();
+            try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (var i = 0; i < intOption("clients"); i++) {
+                    results.add(clients.submit(() -> {
+                        for (var checkout = 0; checkout < intOption("checkouts"); checkout++) {
+                            checkout(productCodes, discountIds);
+                        }
+                        return null;
+                    }));
+                }
+            }
+            var duration = (System.nanoTime() - start) / 1e9;
+            var failedClients = 0;
+            for (var result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    failedClients++;
+                    e.getCause().printStackTrace();
+                }
+            }
+            report(duration);
+            if (failedClients > 0) {
+                System.out.printf("%d of %d clients failed%n", failedClients, results.size());
+                return false;
+            }
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+        return succeeded();
+    }
+
+    private boolean succeeded() {
+        return endpoints.values().stream().allMatch(endpoint -> endpoint.failures == 0);
+    }
+
+    private void checkout(List<String> productCodes, List<Long> discountIds) throws Exception {
+        var random = ThreadLocalRandom.current();
+        var response = send("POST /api/baskets", post("/api/baskets", "{}"));
+        if (response == null) {
+            return;
+        }
+        var location = response.headers().firstValue("Location");
+        if (location.isEmpty()) {
+            endpoint("POST /api/baskets").fail();
+            return;
+        }
+        var basketPath = URI.create(location.get()).getPath();
+        for (var i = 0; i < intOption("scans"); i++) {
+            var code = productCodes.get(random.nextInt(productCodes.size()));
+            send("PATCH /api/baskets/{id}/scan/{productCode}", patch(basketPath + "/scan/" + code));
+        }
+        if (!discountIds.isEmpty()) {
+            var discountId = discountIds.get(random.nextInt(discountIds.size()));
+            send("PATCH /api/baskets/{id}/discounts/{discountId}", patch(basketPath + "/discounts/" + discountId));
+        }
+        send("GET /api/baskets/{id}/total", request(basketPath + "/total").GET().build());
+        send("DELETE /api/baskets/{id}", request(basketPath).DELETE().build());
+    }
+
+    private List<String> seedProducts(int count) throws Exception {
+        var codes = new ArrayList<String>();
+        for (var i = 0; i < count; i++) {
+            var code = String.format("L%06d", i);
+            var price = String.format("%d.%02d", 1 + i % 20, i % 100);
+            send("POST /api/products",
+                    post("/api/products", "{\"code\":\"" + code + "\",\"price\":" + price + "}"));
+            codes.add(code);
+        }
+        return codes;
+    }
+
+    private List<Long> seedDiscounts(List<String> productCodes, int count) throws Exception {
+        var ids = new ArrayList<Long>();
+        for (var i = 0; i < count && i < productCodes.size(); i++) {
+            var type = i % 2 == 0 ? "TEN_PERCENT_OFF" : "BUY_1_GET_1_FREE";
+            var response = send("POST /api/discounts", post("/api/discounts",
+                    "{\"type\":\"" + type + "\",\"productCode\":\"" + productCodes.get(i) + "\"}"));
+            if (response == null) {
+                continue;
+            }
+            response.headers().firstValue("Location").ifPresent(location -> ids
+                    .add(Long.valueOf(location.substring(location.lastIndexOf('/') + 1))));
+        }
+        return ids;
+    }
+
+    // null if the request failed without a response, counted as a failure
+    private HttpResponse<Void> send(String endpoint, HttpRequest request) throws InterruptedException {
+        var start = System.nanoTime();
+        try {
+            var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            endpoint(endpoint).record(System.nanoTime() - start, response.statusCode() >= 400);
+            return response;
+        } catch (IOException e) {
+            endpoint(endpoint).record(System.nanoTime() - start, true);
+            return null;
+        }
+    }
+
+    private Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, key -> new Endpoint());
+    }
+
+    private void report(double durationSeconds) {
+        System.out.printf("%d clients, %d checkouts each, %d scans per checkout, %.1f s%n", intOption("clients"),
+                intOption("checkouts"), intOption("scans"), durationSeconds);
+        System.out.printf("%-48s %9s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "failures", "req/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms");
+        var sorted = new LinkedHashMap<String, Endpoint>();
+        endpoints.keySet().stream().sorted().forEach(name -> sorted.put(name, endpoints.get(name)));
+        sorted.forEach((name, endpoint) -> {
+            var latencies = endpoint.sortedLatencies();
+            System.out.printf("%-48s %9d %9d %9.0f %9.2f %9.2f %9.2f %9.2f%n", name, latencies.length,
+                    endpoint.failures, latencies.length / durationSeconds, percentile(latencies, 0.5),
+                    percentile(latencies, 0.99), percentile(latencies, 0.999), percentile(latencies, 1));
+        });
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        var index = Math.max(0, (int) Math.ceil(percentile * sortedLatencies.length) - 1);
+        return sortedLatencies[index] / 1e6;
+    }
+
+    private HttpRequest post(String path, String json) {
+        return request(path).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private HttpRequest patch(String path) {
+        return request(path).method("PATCH", HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path));
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    // latencies in nanoseconds of all requests to one endpoint
+    private static final class Endpoint {
+
+        private long[] latencies = new long[1024];
+
+        private int count;
+
+        private int failures;
+
+        private synchronized void record(long latency, boolean failed) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            if (failed) {
+                failures++;
+            }
+        }
+
+        // a response that is not what the flow needs, the request itself is recorded
+        private synchronized void fail() {
+            failures++;
+        }
+
+        private synchronized long[] sortedLatencies() {
+            var sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package de.rwi.bitside.codingchallenge.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import de.rwi.bitside.codingchallenge.CodingchallengeApplication;
+
+// keeps many keep-alive connections open like a self-checkout fleet, each one scans
+// once, then all of them sit idle, then all of them scan at once, and reports the
+// platform threads and heap per idle connection, the platform threads started for
+// the burst and its duration, once with a platform thread pool and once with virtual
+// threads, the application runs in a process of its own with the fleet profile and
+// is measured over JMX, so the client sockets do not count, exits with 1 if any
+// request failed
+public class IdleConnectionsBenchmark {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = 120_000;
+
+    private final Map<String, String> options = new HashMap<>(Map.of(
+            "connections", "2000",
+            "platform-threads", "200"));
+
+    public static void main(String[] args) throws Exception {
+        var benchmark = new IdleConnectionsBenchmark();
+        for (var arg : args) {
+            var option = arg.replaceFirst("^--", "").split("=", 2);
+            benchmark.options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        var platformThreads = benchmark.run(false);
+        var virtualThreads = benchmark.run(true);
+        System.out.printf("%-10s %12s %14s %16s %14s %10s %10s%n", "threads", "connections", "threads/conn",
+                "heap KiB/conn", "burst threads", "burst ms", "failures");
+        platformThreads.print("platform");
+        virtualThreads.print("virtual");
+        System.exit(platformThreads.failures() == 0 && virtualThreads.failures() == 0 ? 0 : 1);
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        var connectionCount = Integer.parseInt(options.get("connections"));
+        var port = freePort();
+        var jmxPort = freePort();
+        var application = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dcom.sun.management.jmxremote.port=" + jmxPort,
+                "-Dcom.sun.management.jmxremote.authenticate=false",
+                "-Dcom.sun.management.jmxremote.ssl=false",
+                // a devtools restart would start the application once more
+                "-Dspring.devtools.restart.enabled=false",
+                CodingchallengeApplication.class.getName(),
+                "--server.port=" + port,
+                "--spring.profiles.active=fleet",
+                "--server.tomcat.threads.max=" + options.get("platform-threads"),
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (var jmx = connect(application, jmxPort)) {
+            awaitPort(application, port);
+            var server = jmx.getMBeanServerConnection();
+            var threadMXBean = ManagementFactory.newPlatformMXBeanProxy(server, ManagementFactory.THREAD_MXBEAN_NAME,
+                    ThreadMXBean.class);
+            var memoryMXBean = ManagementFactory.newPlatformMXBeanProxy(server, ManagementFactory.MEMORY_MXBEAN_NAME,
+                    MemoryMXBean.class);
+
+            var failures = 0;
+            var product = new Connection(port);
+            failures += failed(product.send("POST", "/api/products", "{\"code\":\"I0001\",\"price\":1.50}"));
+            failures += failed(product.send("POST", "/api/baskets", "{}"));
+            product.close();
+
+            var threadsBefore = threadMXBean.getThreadCount();
+            var heapBefore = usedHeap(memoryMXBean);
+            var connections = new ArrayList<Connection>();
+            for (var i = 0; i < connectionCount; i++) {
+                var connection = new Connection(port);
+                failures += failed(connection.send("PATCH", "/api/baskets/1/scan/I0001", null));
+                connections.add(connection);
+            }
+            // all connections idle
+            var threads = threadMXBean.getThreadCount() - threadsBefore;
+            var heap = usedHeap(memoryMXBean) - heapBefore;
+
+            threadMXBean.resetPeakThreadCount();
+            var threadsBeforeBurst = threadMXBean.getThreadCount();
+            var start = System.nanoTime();
+            var responses = new ArrayList<Future<Integer>>();
+            try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (var connection : connections) {
+                    responses.add(clients.submit(() -> connection.send("PATCH", "/api/baskets/1/scan/I0001", null)));
+                }
+            }
+            var burstMillis = (System.nanoTime() - start) / 1_000_000;
+            var burstThreads = threadMXBean.getPeakThreadCount() - threadsBeforeBurst;
+            for (var response : responses) {
+                try {
+                    failures += failed(response.get());
+                } catch (ExecutionException e) {
+                    failures++;
+                }
+            }
+            for (var connection : connections) {
+                connection.close();
+            }
+            return new Result(connectionCount, threads, heap, burstThreads, burstMillis, failures);
+        } finally {
+            application.destroy();
+            application.waitFor();
+        }
+    }
+
+    private static int failed(int status) {
+        return status >= 200 && status < 300 ? 0 : 1;
+    }
+
+    private static long usedHeap(MemoryMXBean memoryMXBean) {
+        memoryMXBean.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static JMXConnector connect(Process application, int jmxPort) throws Exception {
+        var url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:" + jmxPort + "/jmxrmi");
+        var deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return JMXConnectorFactory.connect(url);
+            } catch (IOException e) {
+                awaitRetry(application, deadline, e);
+            }
+        }
+    }
+
+    private static void awaitPort(Process application, int port) throws Exception {
+        var deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try (var socket = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                awaitRetry(application, deadline, e);
+            }
+        }
+    }
+
+    private static void awaitRetry(Process application, long deadline, IOException e) throws Exception {
+        if (!application.isAlive() || System.currentTimeMillis() > deadline) {
+            application.destroy();
+            throw new IllegalStateException("Application did not start", e);
+        }
+        Thread.sleep(100);
+    }
+
+    // one keep-alive HTTP/1.1 connection sending requests one after another
+    private static final class Connection {
+
+        private final Socket socket;
+
+        private final InputStream in;
+
+        private Connection(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            in = socket.getInputStream();
+        }
+
+        private int send(String method, String path, String json) throws IOException {
+            var body = json == null ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+            var request = method + " " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                    + "Content-Length: " + body.length + "\r\n\r\n";
+            var out = socket.getOutputStream();
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            return readResponse();
+        }
+
+        // reads the status line and headers and skips the body
+        private int readResponse() throws IOException {
+            var headers = new ArrayList<String>();
+            var line = new StringBuilder();
+            while (true) {
+                var c = in.read();
+                if (c < 0) {
+                    throw new IOException("Connection closed");
+                }
+                if (c == '\n') {
+                    if (line.isEmpty()) {
+                        break;
+                    }
+                    headers.add(line.toString());
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            var contentLength = headers.stream().filter(header -> header.toLowerCase().startsWith("content-length:"))
+                    .map(header -> Integer.parseInt(header.substring(15).trim())).findFirst().orElse(0);
+            in.readNBytes(contentLength);
+            return Integer.parseInt(headers.getFirst().split(" ")[1]);
+        }
+
+        private void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private record Result(int connections, int threads, long heap, int burstThreads, long burstMillis,
+            int failures) {
+
+        private void print(String name) {
+            System.out.printf("%-10s %12d %14.3f %16.1f %14d %10d %10d%n", name, connections,
+                    (double) Math.max(threads, 0) / connections, heap / 1024.0 / connections, burstThreads,
+                    burstMillis, failures);
+        }
+    }
+}
@@ -1,20 +1,38 @@
 package de.rwi.bitside.codingchallenge.basket;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountIndex;
+import de.rwi.bitside.codingchallenge.money.Money;
 import de.rwi.bitside.codingchallenge.product.Product;
+import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.MapKey;
+import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.Version;
 
 @Entity
 @Table(name = "baskets")
@@ -24,13 +42,43 @@ public class Basket {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    // the same product can be added multiple times
-    @ManyToMany
-    private List<Product> products;
+    // incremented on every change, concurrent changes of the same basket fail
+    // instead of overwriting each other
+    @Version
+    private Long version;
+
+    // the same product can be added multiple times, each product code is kept as
+    // one line item with a quantity instead of one row per scanned unit
+    // loaded for all baskets of a page with one statement
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "basket_id")
+    @BatchSize(size = BasketService.MAX_PAGE_SIZE)
+    @MapKey(name = "productCode")
+    private Map<String, BasketItem> items = new HashMap<>();
 
     // the same discount can be added only once
     @ManyToMany
-    private Set<Discount> discounts;
+    @BatchSize(size = BasketService.MAX_PAGE_SIZE)
+    private Set<Discount> discounts = new HashSet<>();
+
+    // built lazily from the discounts and kept in sync with them
+    @Transient
+    private DiscountIndex discountIndex;
+
+    // running sum of all line prices in cents, maintained by every mutation
+    private long subtotalCents;
+
+    // running sum of all line savings in hundredths of a cent, maintained by every
+    // mutation
+    private long savingsSubCents;
+
+    // number of the last event contained in this basket, later events are replayed
+    // on top of it when the basket is loaded
+    private long eventSequence;
+
+    // recorded by every change and appended to the event log when the basket is written
+    @Transient
+    private List<BasketEvent> unwrittenEvents = new ArrayList<>();
 
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -42,20 +90,42 @@ public class Basket {
         return id;
     }
 
-    public List<Product> getProducts() {
-        return products;
+    public Long getVersion() {
+        return version;
+    }
+
+    void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Collection<BasketItem> getItems() {
+        return items.values();
+    }
+
+    // number of units in the basket
+    public int getSize() {
+        var size = 0;
+        for (var item : items.values()) {
+            size += item.getQuantity();
+        }
+        return size;
     }
 
-    public void setProducts(List<Product> products) {
-        this.products = products;
+    public BasketItem getItem(String productCode) {
+        return items.get(productCode);
     }
 
     public void addProduct(Product product) {
-        products.add(product);
+        addProduct(product, 1);
+    }
+
+    public void addProduct(Product product, int quantity) {
+        record(BasketEvent.productAdded(product.getCode(), Money.toCents(product.getPrice()), quantity), null);
     }
 
     public void removeProduct(Product product) {
-        products.remove(product);
+        record(BasketEvent.productRemoved(product.getCode()), null);
     }
 
     public Set<Discount> getDiscounts() {
@@ -64,14 +134,175 @@ public class Basket {
 
     public void setDiscounts(Set<Discount> discounts) {
         this.discounts = discounts;
+        this.discountIndex = null;
+        items.values().forEach(this::updateSavings);
+    }
+
+    // true if the basket changed
+    public boolean addDiscount(Discount discount) {
+        return record(BasketEvent.discountAdded(discount), discount);
+    }
+
+    // true if the basket changed
+    public boolean removeDiscount(Discount discount) {
+        return record(BasketEvent.discountRemoved(discount), discount);
+    }
+
+    // events applied since the basket was last taken from its events, in order
+    List<BasketEvent> getUnwrittenEvents() {
+        return unwrittenEvents;
+    }
+
+    // number of the last event applied to the basket
+    long getEventSequence() {
+        return eventSequence;
+    }
+
+    // applies an event read from the event log, the discount of discount events is
+    // passed along as only its id is part of the event and is null if it was deleted
+    void replay(BasketEvent event, Discount discount) {
+        apply(event, discount);
+        eventSequence = event.getSequenceNumber();
+    }
+
+    // applies an event recovered from the write-ahead log that is not in the event log
+    // yet and keeps it to be written again, false if it is not the next event
+    boolean restore(BasketEvent event, Discount discount) {
+        if (event.getSequenceNumber() != eventSequence + 1) {
+            return false;
+        }
+        apply(event, discount);
+        eventSequence = event.getSequenceNumber();
+        unwrittenEvents.add(event);
+        return true;
+    }
+
+    // applies the event and keeps it to be written, true if the basket changed
+    private boolean record(BasketEvent event, Discount discount) {
+        if (!apply(event, discount)) {
+            return false;
+        }
+        event.setBasketId(id);
+        event.setSequenceNumber(++eventSequence);
+        unwrittenEvents.add(event);
+        return true;
+    }
+
+    private boolean apply(BasketEvent event, Discount discount) {
+        return switch (event.getType()) {
+            case PRODUCT_ADDED -> addItem(event.getProductCode(), event.getUnitPriceCents(), event.getQuantity());
+            case PRODUCT_REMOVED -> removeItem(event.getProductCode());
+            case DISCOUNT_ADDED -> discount != null && addToDiscounts(discount);
+            case DISCOUNT_REMOVED -> discount != null && removeFromDiscounts(discount);
+        };
+    }
+
+    private boolean addItem(String productCode, long unitPriceCents, int quantity) {
+        var item = items.get(productCode);
+        // fails before anything is changed
+        var newQuantity = Math.addExact(item == null ? 0 : item.getQuantity(), quantity);
+        if (item == null) {
+            item = new BasketItem();
+            item.setProductCode(productCode);
+            item.setUnitPriceCents(unitPriceCents);
+            items.put(productCode, item);
+        }
+        item.setQuantity(newQuantity);
+        subtotalCents += item.getUnitPriceCents() * quantity;
+        updateSavings(item);
+        return true;
+    }
+
+    private boolean removeItem(String productCode) {
+        var item = items.get(productCode);
+        if (item == null) {
+            return false;
+        }
+        subtotalCents -= item.getUnitPriceCents();
+        if (item.getQuantity() > 1) {
+            item.setQuantity(item.getQuantity() - 1);
+            updateSavings(item);
+        } else {
+            savingsSubCents -= item.getSavingsSubCents();
+            items.remove(productCode);
+        }
+        return true;
+    }
+
+    private boolean addToDiscounts(Discount discount) {
+        var index = getDiscountIndex();
+        if (!discounts.add(discount)) {
+            return false;
+        }
+        index.add(discount);
+        updateSavings(discount.getProductCode());
+        return true;
+    }
+
+    private boolean removeFromDiscounts(Discount discount) {
+        var index = getDiscountIndex();
+        if (!discounts.remove(discount)) {
+            return false;
+        }
+        index.remove(discount);
+        updateSavings(discount.getProductCode());
+        return true;
+    }
+
+    public BigDecimal getSubtotal() {
+        return Money.fromCents(subtotalCents);
+    }
+
+    public BigDecimal getSavings() {
+        return Money.fromSubCents(savingsSubCents);
+    }
+
+    public BigDecimal getTotal() {
+        return Money.fromCents(getTotalCents());
+    }
+
+    @JsonIgnore
+    public long getTotalCents() {
+        return Money.roundToCents(subtotalCents * Money.SUB_CENTS_PER_CENT - savingsSubCents);
+    }
+
+    private void updateSavings(String productCode) {
+        var item = items.get(productCode);
+        if (item != null) {
+            updateSavings(item);
+        }
+    }
+
+    private void updateSavings(BasketItem item) {
+        var itemSavings = getDiscountIndex().calculateSavings(item.getPackedProductCode(), item.getProductCode(),
+                item.getUnitPriceCents(), item.getQuantity());
+        savingsSubCents += itemSavings - item.getSavingsSubCents();
+        item.setSavingsSubCents(itemSavings);
     }
 
-    public void addDiscount(Discount discount) {
-        discounts.add(discount);
+    // copy of the basket and its items sharing the discounts, taken to hand out or
+    // to write a basket that keeps changing in memory
+    Basket copy() {
+        var copy = new Basket();
+        copy.id = id;
+        copy.version = version;
+        for (var item : items.values()) {
+            copy.items.put(item.getProductCode(), item.copy());
+        }
+        copy.discounts.addAll(discounts);
+        copy.eventSequence = eventSequence;
+        copy.subtotalCents = subtotalCents;
+        copy.savingsSubCents = savingsSubCents;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        return copy;
     }
 
-    public void removeDiscount(Discount discount) {
-        discounts.remove(discount);
+    DiscountIndex getDiscountIndex() {
+        if (discountIndex == null) {
+            discountIndex = new DiscountIndex(discounts);
+        }
+        return discountIndex;
     }
 
     public void setId(Long id) {
@@ -1,9 +1,17 @@
 package de.rwi.bitside.codingchallenge.basket;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -13,9 +21,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import jakarta.validation.Valid;
 
 @RestController
@@ -25,19 +38,100 @@ public class BasketController {
     @Autowired
     private BasketService basketService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping
-    List<Basket> getBaskets() {
-        return basketService.getBaskets();
+    ResponseEntity<List<Basket>> getBaskets(@RequestParam(defaultValue = "ID") BasketSort sort,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterUpdatedAt,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int limit) {
+        var pageSize = Math.clamp(limit, 1, BasketService.MAX_PAGE_SIZE);
+        var baskets = basketService.getBaskets(sort, afterUpdatedAt, afterId, pageSize);
+        if (baskets.size() < pageSize) {
+            return ResponseEntity.ok(baskets);
+        }
+        // a full page might be followed by further baskets
+        var last = baskets.get(baskets.size() - 1);
+        var next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("afterId", last.getId());
+        if (sort == BasketSort.UPDATED_AT) {
+            next.replaceQueryParam("afterUpdatedAt", last.getUpdatedAt());
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + next.toUriString() + ">; rel=\"next\"")
+                .body(baskets);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> streamBaskets() {
+        StreamingResponseBody body = out -> basketService.streamBaskets(basket -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(basket));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
+    // totals of all baskets with ids in the range, one JSON object per line
+    @GetMapping(path = "/totals", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> streamTotals(@RequestParam long fromId, @RequestParam long toId) {
+        return streamTotals(consumer -> basketService.streamTotals(fromId, toId, consumer));
+    }
+
+    // totals of the given baskets, one JSON object per line
+    @PostMapping(path = "/totals", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> streamTotals(@RequestBody List<Long> basketIds) {
+        return streamTotals(consumer -> basketService.streamTotals(basketIds, consumer));
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamTotals(Consumer<Consumer<BasketTotal>> totals) {
+        StreamingResponseBody body = out -> totals.accept(total -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(total));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // the version is read before the basket, a change in between is sent under the
+    // older version and downloaded once more with the next poll
     @GetMapping("/{id}")
-    ResponseEntity<Basket> getBasketById(@PathVariable Long id) {
-        return ResponseEntity.ok(basketService.getBasketById(id));
+    ResponseEntity<Basket> getBasketById(@PathVariable Long id, WebRequest request) {
+        var eTag = eTag(basketService.getVersion(id));
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(basketService.getBasketById(id));
+    }
+
+    @GetMapping("/{id}/events")
+    ResponseEntity<List<BasketEvent>> getEvents(@PathVariable Long id) {
+        return ResponseEntity.ok(basketService.getEvents(id));
     }
 
     @GetMapping("/{id}/total")
-    ResponseEntity<BigDecimal> calculateTotal(@PathVariable Long id) {
-        return ResponseEntity.ok(basketService.calculateTotal(id));
+    ResponseEntity<BigDecimal> calculateTotal(@PathVariable Long id, WebRequest request) {
+        var version = basketService.getVersion(id);
+        var eTag = eTag(version);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        // a total newer than its tag is never answered with 304, the basket does not
+        // return to an older version
+        return ResponseEntity.ok().eTag(eTag).body(basketService.calculateTotal(id, version).total());
+    }
+
+    @GetMapping("/{id}/receipt")
+    ResponseEntity<Receipt> getReceipt(@PathVariable Long id) {
+        return ResponseEntity.ok(basketService.getReceipt(id));
     }
 
     @PostMapping
@@ -61,6 +155,11 @@ public class BasketController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/{id}/scan")
+    ResponseEntity<ScanResult> scanProducts(@PathVariable Long id, @RequestBody List<ScanRequest> scans) {
+        return ResponseEntity.ok(basketService.addProducts(id, scans));
+    }
+
     @DeleteMapping("/{id}/products/{productId}")
     ResponseEntity<Void> removeProduct(@PathVariable Long id, @PathVariable Long productId) {
         basketService.removeProduct(id, productId);
@@ -85,6 +184,10 @@ public class BasketController {
         return ResponseEntity.noContent().build();
     }
 
+    private static String eTag(BasketVersion version) {
+        return "\"" + version.tag() + "\"";
+    }
+
     @ExceptionHandler(BasketNotFoundException.class)
     ResponseEntity<Void> handle(BasketNotFoundException e) {
         return ResponseEntity.notFound().build();
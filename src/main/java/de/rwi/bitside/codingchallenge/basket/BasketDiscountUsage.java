@@ -0,0 +1,24 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import de.rwi.bitside.codingchallenge.discount.DiscountUsage;
+
+// a discount is in use while a basket holds it, in its snapshot, in an event
+// written after the snapshot or in memory
+@Component
+class BasketDiscountUsage implements DiscountUsage {
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired(required = false)
+    private BasketStore basketStore;
+
+    @Override
+    public boolean isInUse(Long discountId) {
+        return (basketStore != null && basketStore.holdsDiscount(discountId))
+                || basketRepository.countWithDiscount(discountId) > 0;
+    }
+}
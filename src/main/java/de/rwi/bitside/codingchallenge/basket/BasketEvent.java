@@ -0,0 +1,153 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.money.Money;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
+
+// one change of a basket, the events of a basket are numbered without gaps and are
+// only ever appended
+@Entity
+@Table(name = "basket_events", uniqueConstraints = @UniqueConstraint(columnNames = { "basket_id",
+        "sequence_number" }))
+public class BasketEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long basketId;
+
+    private long sequenceNumber;
+
+    private BasketEventType type;
+
+    private String productCode;
+
+    private int quantity;
+
+    // price of a single unit at the time the product was scanned
+    private long unitPriceCents;
+
+    private Long discountId;
+
+    private LocalDateTime createdAt;
+
+    // number of the write-ahead log segment holding the event until it is written
+    @Transient
+    private long walSegment;
+
+    static BasketEvent productAdded(String productCode, long unitPriceCents, int quantity) {
+        var event = new BasketEvent(BasketEventType.PRODUCT_ADDED, productCode);
+        event.unitPriceCents = unitPriceCents;
+        event.quantity = quantity;
+        return event;
+    }
+
+    static BasketEvent productRemoved(String productCode) {
+        var event = new BasketEvent(BasketEventType.PRODUCT_REMOVED, productCode);
+        event.quantity = 1;
+        return event;
+    }
+
+    static BasketEvent discountAdded(Discount discount) {
+        var event = new BasketEvent(BasketEventType.DISCOUNT_ADDED, discount.getProductCode());
+        event.discountId = discount.getId();
+        return event;
+    }
+
+    static BasketEvent discountRemoved(Discount discount) {
+        var event = new BasketEvent(BasketEventType.DISCOUNT_REMOVED, discount.getProductCode());
+        event.discountId = discount.getId();
+        return event;
+    }
+
+    // event read back from the write-ahead log
+    static BasketEvent restored(Long basketId, long sequenceNumber, BasketEventType type, String productCode,
+            int quantity, long unitPriceCents, Long discountId, LocalDateTime createdAt) {
+        var event = new BasketEvent(type, productCode);
+        event.basketId = basketId;
+        event.sequenceNumber = sequenceNumber;
+        event.quantity = quantity;
+        event.unitPriceCents = unitPriceCents;
+        event.discountId = discountId;
+        event.createdAt = createdAt;
+        return event;
+    }
+
+    protected BasketEvent() {
+    }
+
+    private BasketEvent(BasketEventType type, String productCode) {
+        this.type = type;
+        this.productCode = productCode;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getBasketId() {
+        return basketId;
+    }
+
+    void setBasketId(Long basketId) {
+        this.basketId = basketId;
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public BasketEventType getType() {
+        return type;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getUnitPrice() {
+        return type == BasketEventType.PRODUCT_ADDED ? Money.fromCents(unitPriceCents) : null;
+    }
+
+    @JsonIgnore
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public Long getDiscountId() {
+        return discountId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    long getWalSegment() {
+        return walSegment;
+    }
+
+    void setWalSegment(long walSegment) {
+        this.walSegment = walSegment;
+    }
+}
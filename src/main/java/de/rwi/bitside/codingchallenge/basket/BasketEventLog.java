@@ -0,0 +1,81 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountService;
+
+// append-only log of all changes of all baskets, a basket row is a snapshot of the
+// basket up to its event sequence and later events are replayed on top of it
+@Component
+public class BasketEventLog {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO basket_events
+                (basket_id, sequence_number, type, product_code, quantity, unit_price_cents, discount_id, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BasketEventRepository basketEventRepository;
+
+    @Autowired
+    private DiscountService discountService;
+
+    // appends the events with one JDBC batch, within the transaction writing the
+    // baskets they belong to
+    public void append(List<BasketEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (statement, event) -> {
+            statement.setLong(1, event.getBasketId());
+            statement.setLong(2, event.getSequenceNumber());
+            statement.setInt(3, event.getType().ordinal());
+            statement.setString(4, event.getProductCode());
+            statement.setInt(5, event.getQuantity());
+            statement.setLong(6, event.getUnitPriceCents());
+            statement.setObject(7, event.getDiscountId());
+            statement.setTimestamp(8, Timestamp.valueOf(event.getCreatedAt()));
+        });
+    }
+
+    // events of the basket after the given sequence number in order
+    public List<BasketEvent> getEvents(Long basketId, long afterSequenceNumber) {
+        return basketEventRepository.findByBasketIdAndSequenceNumberGreaterThanOrderBySequenceNumberAsc(basketId,
+                afterSequenceNumber);
+    }
+
+    // brings the basket up to date with the events written after its snapshot,
+    // events of deleted discounts change nothing
+    public void replay(Basket basket) {
+        var events = getEvents(basket.getId(), basket.getEventSequence());
+        var discounts = getDiscounts(events);
+        for (var event : events) {
+            basket.replay(event, discounts.get(event.getDiscountId()));
+        }
+    }
+
+    // discounts of the discount events by id with one statement, deleted discounts
+    // are missing
+    public Map<Long, Discount> getDiscounts(Collection<BasketEvent> events) {
+        var discountIds = new HashSet<Long>();
+        for (var event : events) {
+            if (event.getDiscountId() != null) {
+                discountIds.add(event.getDiscountId());
+            }
+        }
+        return discountService.getDiscountsByIds(discountIds);
+    }
+}
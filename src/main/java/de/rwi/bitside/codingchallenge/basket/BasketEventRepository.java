@@ -0,0 +1,11 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BasketEventRepository extends JpaRepository<BasketEvent, Long> {
+
+    List<BasketEvent> findByBasketIdAndSequenceNumberGreaterThanOrderBySequenceNumberAsc(Long basketId,
+            long sequenceNumber);
+}
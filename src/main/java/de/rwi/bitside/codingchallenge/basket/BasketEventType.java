@@ -0,0 +1,9 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+public enum BasketEventType {
+
+    PRODUCT_ADDED,
+    PRODUCT_REMOVED,
+    DISCOUNT_ADDED,
+    DISCOUNT_REMOVED
+}
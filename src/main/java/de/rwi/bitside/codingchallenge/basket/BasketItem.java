@@ -0,0 +1,109 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import de.rwi.bitside.codingchallenge.money.Money;
+import de.rwi.bitside.codingchallenge.product.ProductCode;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+
+@Entity
+@Table(name = "basket_items")
+public class BasketItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String productCode;
+
+    private int quantity;
+
+    // price of a single unit at the time the product was scanned
+    private long unitPriceCents;
+
+    // discount value of the whole line in hundredths of a cent, so that the basket
+    // total is rounded only once
+    private long savingsSubCents;
+
+    // product code packed on first use, 0 until then
+    @Transient
+    private long packedProductCode;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public void setProductCode(String productCode) {
+        this.productCode = productCode;
+        this.packedProductCode = 0;
+    }
+
+    // see ProductCode.pack
+    @JsonIgnore
+    public long getPackedProductCode() {
+        if (packedProductCode == 0) {
+            packedProductCode = ProductCode.pack(productCode);
+        }
+        return packedProductCode;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getUnitPrice() {
+        return Money.fromCents(unitPriceCents);
+    }
+
+    @JsonIgnore
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
+    public void setUnitPriceCents(long unitPriceCents) {
+        this.unitPriceCents = unitPriceCents;
+    }
+
+    public BigDecimal getSavings() {
+        return Money.fromSubCents(savingsSubCents);
+    }
+
+    @JsonIgnore
+    public long getSavingsSubCents() {
+        return savingsSubCents;
+    }
+
+    public void setSavingsSubCents(long savingsSubCents) {
+        this.savingsSubCents = savingsSubCents;
+    }
+
+    BasketItem copy() {
+        var copy = new BasketItem();
+        copy.id = id;
+        copy.productCode = productCode;
+        copy.quantity = quantity;
+        copy.unitPriceCents = unitPriceCents;
+        copy.savingsSubCents = savingsSubCents;
+        copy.packedProductCode = packedProductCode;
+        return copy;
+    }
+}
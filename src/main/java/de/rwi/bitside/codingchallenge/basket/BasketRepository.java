@@ -1,7 +1,69 @@
 package de.rwi.bitside.codingchallenge.basket;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import jakarta.persistence.LockModeType;
 
+// pages load baskets only, their items and discounts are batch fetched for the
+// whole page on first access (see Basket)
 public interface BasketRepository extends JpaRepository<Basket, Long> {
 
+    // a single basket is read or changed together with its items and discounts
+    @EntityGraph(attributePaths = { "items", "discounts" })
+    Optional<Basket> findWithItemsAndDiscountsById(Long id);
+
+    // number of the last change of the basket, including events written after its
+    // snapshot, without loading the basket
+    @Query("select greatest(b.eventSequence, coalesce((select max(e.sequenceNumber) from BasketEvent e "
+            + "where e.basketId = b.id), 0)) from Basket b where b.id = :id")
+    Optional<Long> findEventSequenceById(Long id);
+
+    // the basket together with the number of its last change as above, read with one
+    // statement, so that both belong to the same state of the basket
+    @Query("select b as basket, greatest(b.eventSequence, coalesce((select max(e.sequenceNumber) "
+            + "from BasketEvent e where e.basketId = b.id), 0)) as eventSequence from Basket b where b.id = :id")
+    Optional<VersionedBasket> findVersionedById(Long id);
+
+    // locks the basket against deletion until the end of the transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b.id from Basket b where b.id = :id")
+    Optional<Long> lockById(Long id);
+
+    List<Basket> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // number of baskets that hold the discount in their snapshot or got it with an
+    // event, a discount removed again still counts
+    @Query("select count(b) from Basket b where exists (select d from b.discounts d where d.id = :discountId) "
+            + "or exists (select e from BasketEvent e where e.basketId = b.id and e.discountId = :discountId)")
+    long countWithDiscount(Long discountId);
+
+    // ids of baskets not changed since the given time, neither in their snapshot nor
+    // with an event written after it, locked for deletion
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b.id from Basket b where b.updatedAt < :updatedBefore and b.id > :afterId and not exists "
+            + "(select e from BasketEvent e where e.basketId = b.id and e.createdAt >= :updatedBefore) order by b.id")
+    List<Long> findExpiredIds(LocalDateTime updatedBefore, Long afterId, Limit limit);
+
+    List<Basket> findByIdBetweenOrderByIdAsc(Long fromId, Long toId, Limit limit);
+
+    List<Basket> findAllByOrderByUpdatedAtAscIdAsc(Limit limit);
+
+    @Query("select b from Basket b where b.updatedAt > :updatedAt or (b.updatedAt = :updatedAt and b.id > :id) "
+            + "order by b.updatedAt, b.id")
+    List<Basket> findAfterUpdatedAt(LocalDateTime updatedAt, Long id, Limit limit);
+
+    interface VersionedBasket {
+
+        Basket getBasket();
+
+        long getEventSequence();
+    }
 }
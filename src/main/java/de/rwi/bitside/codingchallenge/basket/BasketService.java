@@ -1,106 +1,386 @@
 package de.rwi.bitside.codingchallenge.basket;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
 import de.rwi.bitside.codingchallenge.discount.DiscountService;
-import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.money.Money;
 import de.rwi.bitside.codingchallenge.product.ProductService;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 
 @Service
+@Timed(value = "basket.service", histogram = true, percentiles = { 0.5, 0.95, 0.99 })
 public class BasketService {
 
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // totals by basket and version, see spring.cache.caffeine.spec
+    public static final String BASKET_TOTALS_CACHE = "basketTotals";
+
+    // attempts to change a basket before giving up on concurrent changes of the
+    // same basket
+    static final int MAX_UPDATE_ATTEMPTS = 20;
+
     @Autowired
     private BasketRepository basketRepository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private ProductService productService;
 
     @Autowired
     private DiscountService discountService;
 
-    public List<Basket> getBaskets() {
-        return basketRepository.findAll();
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private BasketEventLog basketEventLog;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private BasketSweeper basketSweeper;
+
+    // holds baskets being changed in memory if enabled, otherwise every change is
+    // written to the database right away
+    @Autowired(required = false)
+    private BasketStore basketStore;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // compare the running total against a full recalculation on every read
+    @Value("${basket.total.consistency-check:false}")
+    private boolean totalConsistencyCheck;
+
+    // keyset pagination, the next page starts after the last basket of the previous one
+    public List<Basket> getBaskets(BasketSort sort, LocalDateTime afterUpdatedAt, Long afterId, int limit) {
+        var pageLimit = Limit.of(Math.clamp(limit, 1, MAX_PAGE_SIZE));
+        var id = afterId == null ? 0L : afterId;
+        var baskets = switch (sort) {
+            case ID -> basketRepository.findByIdGreaterThanOrderByIdAsc(id, pageLimit);
+            case UPDATED_AT -> afterUpdatedAt == null ? basketRepository.findAllByOrderByUpdatedAtAscIdAsc(pageLimit)
+                    : basketRepository.findAfterUpdatedAt(afterUpdatedAt, id, pageLimit);
+        };
+        return baskets.stream().map(this::withUnwrittenChanges).toList();
+    }
+
+    // hands out one basket after another, page by page, and clears each page
+    // afterwards, so the heap does not grow with the number of baskets and the
+    // items and discounts of a page are loaded with one statement each
+    @Transactional(readOnly = true)
+    public void streamBaskets(Consumer<Basket> consumer) {
+        var afterId = 0L;
+        List<Basket> baskets;
+        do {
+            baskets = basketRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(MAX_PAGE_SIZE));
+            baskets.forEach(basket -> consumer.accept(withUnwrittenChanges(basket)));
+            if (!baskets.isEmpty()) {
+                afterId = baskets.getLast().getId();
+            }
+            entityManager.clear();
+        } while (baskets.size() == MAX_PAGE_SIZE);
+    }
+
+    // recalculates the totals of all baskets with ids in the range, page by page in id
+    // order, the baskets of a page are loaded with one statement for the baskets,
+    // items and discounts each and priced in parallel
+    @Transactional(readOnly = true)
+    public void streamTotals(long fromId, long toId, Consumer<BasketTotal> consumer) {
+        var nextId = fromId;
+        List<Basket> baskets;
+        do {
+            baskets = basketRepository.findByIdBetweenOrderByIdAsc(nextId, toId, Limit.of(MAX_PAGE_SIZE));
+            streamTotals(baskets, consumer);
+            if (!baskets.isEmpty()) {
+                nextId = baskets.getLast().getId() + 1;
+            }
+        } while (baskets.size() == MAX_PAGE_SIZE);
+    }
+
+    // recalculates the totals of the given baskets in id order, unknown ids are skipped
+    @Transactional(readOnly = true)
+    public void streamTotals(Collection<Long> basketIds, Consumer<BasketTotal> consumer) {
+        var sortedIds = basketIds.stream().distinct().sorted().toList();
+        for (var from = 0; from < sortedIds.size(); from += MAX_PAGE_SIZE) {
+            var pageIds = sortedIds.subList(from, Math.min(from + MAX_PAGE_SIZE, sortedIds.size()));
+            var baskets = new ArrayList<>(basketRepository.findAllById(pageIds));
+            baskets.sort(Comparator.comparing(Basket::getId));
+            streamTotals(baskets, consumer);
+        }
     }
 
     public Basket getBasketById(Long id) {
-        return basketRepository.findById(id).orElseThrow(() -> new BasketNotFoundException());
+        return readBasket(id, Basket::copy).orElseGet(
+                () -> basketRepository.findWithItemsAndDiscountsById(id).orElseThrow(this::basketNotFound));
+    }
+
+    // changes with every change of the basket and never repeats, see BasketVersion
+    public BasketVersion getVersion(Long basketId) {
+        return (basketStore == null ? Optional.<BasketVersion>empty() : basketStore.getVersion(basketId))
+                .orElseGet(() -> new BasketVersion(0, basketRepository.findEventSequenceById(basketId)
+                        .orElseThrow(this::basketNotFound)));
+    }
+
+    // all changes of the basket in order, including those not written yet
+    public List<BasketEvent> getEvents(Long basketId) {
+        // unwritten events are read first, so none is missed if they are written
+        // in the meantime
+        var unwrittenEvents = readBasket(basketId, basket -> List.copyOf(basket.getUnwrittenEvents()))
+                .orElse(List.of());
+        if (!basketRepository.existsById(basketId)) {
+            throw basketNotFound();
+        }
+        var events = new ArrayList<>(basketEventLog.getEvents(basketId, 0));
+        var lastSequenceNumber = events.isEmpty() ? 0 : events.getLast().getSequenceNumber();
+        for (var event : unwrittenEvents) {
+            if (event.getSequenceNumber() > lastSequenceNumber) {
+                events.add(event);
+            }
+        }
+        return events;
     }
 
     public Basket createBasket(Basket basket) {
         return basketRepository.save(basket);
     }
 
+    // deletes the basket with its events, the events would otherwise keep its
+    // discounts in use
     public void deleteBasket(Long id) {
-        basketRepository.deleteById(id);
+        if (basketStore != null) {
+            basketStore.remove(id);
+        }
+        transactionOperations.executeWithoutResult(status -> basketSweeper.delete(List.of(id)));
     }
 
     public void addProduct(Long basketId, Long productId) {
         var product = productService.getProductById(productId);
-        var basket = basketRepository.findById(basketId).orElseThrow(() -> new BasketNotFoundException());
-        basket.addProduct(product);
-        basketRepository.save(basket);
+        var size = updateBasket(basketId, basket -> {
+            basket.addProduct(product);
+            return basket.getSize();
+        });
+        recordBasketSize(size);
     }
 
     public void addProduct(Long basketId, String productCode) {
         var product = productService.getProductByCode(productCode);
-        var basket = basketRepository.findById(basketId).orElseThrow(() -> new BasketNotFoundException());
-        basket.addProduct(product);
-        basketRepository.save(basket);
+        var size = updateBasket(basketId, basket -> {
+            basket.addProduct(product);
+            return basket.getSize();
+        });
+        recordBasketSize(size);
+    }
+
+    // adds all scanned codes within one transaction, unknown codes, entries without a
+    // code and invalid quantities are reported without failing the remaining scans,
+    // as are scans that would take the basket beyond Integer.MAX_VALUE units
+    public ScanResult addProducts(Long basketId, List<ScanRequest> scans) {
+        var codes = new HashSet<String>();
+        for (var scan : scans) {
+            if (scan != null && scan.code() != null) {
+                codes.add(scan.code());
+            }
+        }
+        var products = productService.getProductsByCodes(codes);
+        var rejected = new ArrayList<ScanResult.Failure>();
+        var accepted = new ArrayList<ScanRequest>();
+        for (var scan : scans) {
+            if (scan == null || products.get(scan.code()) == null) {
+                rejected.add(new ScanResult.Failure(scan == null ? null : scan.code(),
+                        ScanResult.Reason.PRODUCT_NOT_FOUND));
+            } else if (scan.quantityOrDefault() < 1 || scan.quantityOrDefault() > ScanRequest.MAX_QUANTITY) {
+                rejected.add(new ScanResult.Failure(scan.code(), ScanResult.Reason.INVALID_QUANTITY));
+            } else {
+                accepted.add(scan);
+            }
+        }
+        // the change may be applied more than once, see updateBasket
+        var batch = updateBasket(basketId, basket -> {
+            var size = basket.getSize();
+            var scanned = 0;
+            var failures = new ArrayList<>(rejected);
+            for (var scan : accepted) {
+                var quantity = scan.quantityOrDefault();
+                if (size > Integer.MAX_VALUE - quantity) {
+                    failures.add(new ScanResult.Failure(scan.code(), ScanResult.Reason.INVALID_QUANTITY));
+                    continue;
+                }
+                basket.addProduct(products.get(scan.code()), quantity);
+                size += quantity;
+                scanned += quantity;
+            }
+            return new Scanned(new ScanResult(scanned, failures), size);
+        });
+        recordBasketSize(batch.size());
+        return batch.result();
     }
 
     public void removeProduct(Long basketId, Long productId) {
         var product = productService.getProductById(productId);
-        var basket = basketRepository.findById(basketId).orElseThrow(() -> new BasketNotFoundException());
-        basket.removeProduct(product);
-        basketRepository.save(basket);
+        var size = updateBasket(basketId, basket -> {
+            basket.removeProduct(product);
+            return basket.getSize();
+        });
+        recordBasketSize(size);
     }
 
     public void addDiscount(Long basketId, Long discountId) {
         var discount = discountService.getDiscountById(discountId);
-        var basket = basketRepository.findById(basketId).orElseThrow(() -> new BasketNotFoundException());
-        basket.addDiscount(discount);
-        basketRepository.save(basket);
+        updateBasket(basketId, basket -> basket.addDiscount(discount));
     }
 
     public void removeDiscount(Long basketId, Long discountId) {
         var discount = discountService.getDiscountById(discountId);
-        var basket = basketRepository.findById(basketId).orElseThrow(() -> new BasketNotFoundException());
-        basket.removeDiscount(discount);
-        basketRepository.save(basket);
+        updateBasket(basketId, basket -> basket.removeDiscount(discount));
     }
 
     public BigDecimal calculateTotal(Long basketId) {
-        var total = BigDecimal.ZERO;
-        var basket = basketRepository.findById(basketId).get();
-        var products = basket.getProducts();
-        var discounts = basket.getDiscounts();
-        // add prices of discountable products
-        for (var discount : discounts) {
-            var discountableProducts = products.stream()
-                    .filter(product -> product.getCode().equals(discount.getProductCode())).toList();
-            var subTotal = discountableProducts.stream().map(Product::getPrice).reduce(BigDecimal.ZERO,
-                    BigDecimal::add);
-            var discountValue = BigDecimal.ZERO;
-            switch (discount.getType()) {
-                case TEN_PERCENT_OFF:
-                    discountValue = subTotal.multiply(BigDecimal.valueOf(discount.getType().getPercentage() / 100));
-                    break;
-                case BUY_1_GET_1_FREE:
-                    discountValue = subTotal.divide(BigDecimal.valueOf(discountableProducts.size()))
-                            .multiply(BigDecimal.valueOf(discountableProducts.size() / 2));
-                    break;
+        return readBasket(basketId, this::calculateTotal).orElseGet(() -> {
+            // the running total needs no items and discounts, only the recalculation does
+            var basket = (totalConsistencyCheck ? basketRepository.findWithItemsAndDiscountsById(basketId)
+                    : basketRepository.findById(basketId)).orElseThrow(this::basketNotFound);
+            return calculateTotal(basket);
+        });
+    }
+
+    // total of the basket cached by the given version, version and total are read
+    // from the same state of the basket and the total is only cached if the basket is
+    // still at the given version, a version is never reused for a different state of
+    // the basket so the cached total is never outdated, the version of the result is
+    // newer if the basket was changed after the given version was read
+    @Cacheable(cacheNames = BASKET_TOTALS_CACHE, key = "#basketId + ':' + #version.tag()",
+            unless = "!#result.version().equals(#version)")
+    public VersionedTotal calculateTotal(Long basketId, BasketVersion version) {
+        return (basketStore == null ? Optional.<VersionedTotal>empty()
+                : basketStore.readVersioned(basketId,
+                        (activeVersion, basket) -> new VersionedTotal(activeVersion, calculateTotal(basket))))
+                .orElseGet(() -> transactionOperations.execute(status -> {
+                    var versioned = basketRepository.findVersionedById(basketId).orElseThrow(this::basketNotFound);
+                    // the recalculation of the consistency check loads items and discounts lazily
+                    return new VersionedTotal(new BasketVersion(0, versioned.getEventSequence()),
+                            calculateTotal(versioned.getBasket()));
+                }));
+    }
+
+    // prices the basket line by line with a single load of the basket
+    public Receipt getReceipt(Long basketId) {
+        return readBasket(basketId, pricingEngine::createReceipt).orElseGet(() -> pricingEngine.createReceipt(
+                basketRepository.findWithItemsAndDiscountsById(basketId).orElseThrow(this::basketNotFound)));
+    }
+
+    private BigDecimal calculateTotal(Basket basket) {
+        var total = basket.getTotal();
+        if (totalConsistencyCheck) {
+            var recalculatedTotal = pricingEngine.calculateTotal(basket);
+            if (recalculatedTotal.compareTo(total) != 0) {
+                throw new IllegalStateException("Running total " + total + " of basket " + basket.getId()
+                        + " differs from recalculated total " + recalculatedTotal);
+            }
+        }
+        return total;
+    }
+
+    // changes the basket in memory if the basket store is enabled, otherwise loads,
+    // changes and saves the basket and appends its events within one transaction, a
+    // concurrent change of the same basket fails on its version or event sequence
+    // and the change is applied again to a freshly loaded basket after a short random
+    // pause
+    private <T> T updateBasket(Long basketId, Function<Basket, T> change) {
+        if (basketStore != null) {
+            return basketStore.update(basketId, change).orElseThrow(this::basketNotFound);
+        }
+        for (var attempt = 1;; attempt++) {
+            try {
+                return transactionOperations.execute(status -> {
+                    var basket = basketRepository.findWithItemsAndDiscountsById(basketId)
+                            .orElseThrow(this::basketNotFound);
+                    basketEventLog.replay(basket);
+                    var result = change.apply(basket);
+                    basketRepository.save(basket);
+                    basketEventLog.append(basket.getUnwrittenEvents());
+                    basket.getUnwrittenEvents().clear();
+                    return result;
+                });
+            } catch (OptimisticLockingFailureException | DuplicateKeyException e) {
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    throw e;
+                }
+                meterRegistry.counter("basket.update.conflicts").increment();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(attempt + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
             }
-            subTotal = subTotal.subtract(discountValue);
-            total = total.add(subTotal);
-            products.removeAll(discountableProducts);
         }
-        // add prices of non-discountable products
-        total = total.add(products.stream().map(Product::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add));
-        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    // reads the basket from the basket store if it is held there
+    private <T> Optional<T> readBasket(Long basketId, Function<Basket, T> reader) {
+        return basketStore == null ? Optional.empty() : basketStore.read(basketId, reader);
+    }
+
+    private void streamTotals(List<Basket> page, Consumer<BasketTotal> consumer) {
+        var baskets = new ArrayList<Basket>(page.size());
+        for (var basket : page) {
+            var activeBasket = withUnwrittenChanges(basket);
+            // loads the items and discounts of the whole page before they are
+            // accessed in parallel
+            activeBasket.getItems().size();
+            activeBasket.getDiscounts().size();
+            baskets.add(activeBasket);
+        }
+        var totals = pricingEngine.calculateTotalsCents(baskets);
+        for (var i = 0; i < baskets.size(); i++) {
+            consumer.accept(new BasketTotal(baskets.get(i).getId(), Money.fromCents(totals[i])));
+        }
+        entityManager.clear();
+    }
+
+    // baskets read from the database miss the changes not written yet
+    private Basket withUnwrittenChanges(Basket basket) {
+        return readBasket(basket.getId(), Basket::copy).orElse(basket);
+    }
+
+    // distribution of the number of units per basket after each change of its products
+    private void recordBasketSize(int size) {
+        meterRegistry.summary("basket.size").record(size);
+    }
+
+    private BasketNotFoundException basketNotFound() {
+        meterRegistry.counter("entity.not.found", "entity", "basket").increment();
+        return new BasketNotFoundException();
+    }
+
+    // result of a batch of scans and the size of the basket after it
+    private record Scanned(ScanResult result, int size) {
     }
 }
@@ -0,0 +1,10 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+// key used to page through baskets, updated at is combined with the id to keep
+// the order stable for baskets updated at the same time, updated at only changes
+// with a snapshot of the basket, not with every event
+public enum BasketSort {
+
+    ID,
+    UPDATED_AT
+}
@@ -0,0 +1,476 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+// keeps baskets that are being changed in memory, changes are applied under a lock
+// per basket and their events appended to the event log in batches by a background
+// flush, the events of a basket are written once the oldest of them is older than
+// the max dirty age, so all changes reach the database within max dirty age plus
+// flush interval, the basket itself is written every snapshot interval events, with
+// the write-ahead log enabled the events are on disk before a change returns and
+// unwritten events are recovered from it on startup
+@Component
+@ConditionalOnProperty(name = "basket.store.enabled", havingValue = "true")
+public class BasketStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BasketStore.class);
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    // one flush at a time, only taken by the flush, a basket being deleted waits
+    // for the write of that basket only
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private BasketEventLog basketEventLog;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired(required = false)
+    private BasketWal basketWal;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${basket.store.max-dirty-age:PT1S}")
+    private Duration maxDirtyAge;
+
+    // baskets without changes for this long are dropped from memory
+    @Value("${basket.store.idle-timeout:PT5M}")
+    private Duration idleTimeout;
+
+    @Value("${basket.store.flush-batch-size:100}")
+    private int flushBatchSize;
+
+    // failed writes of a basket in a row after which its changes are dropped
+    @Value("${basket.store.max-write-attempts:10}")
+    private int maxWriteAttempts;
+
+    // number of events after which a basket is written as a whole again
+    @Value("${basket.events.snapshot-interval:100}")
+    private int snapshotInterval;
+
+    @PostConstruct
+    void start() throws IOException {
+        meterRegistry.gaugeMapSize("basket.store.active", List.of(), entries);
+        if (basketWal != null) {
+            recover();
+        }
+    }
+
+    // applies the change to the basket in memory, loading it first if it is not
+    // active yet, empty if the basket does not exist
+    public <T> Optional<T> update(Long basketId, Function<Basket, T> change) {
+        while (true) {
+            var entry = entries.get(basketId);
+            if (entry == null) {
+                entry = activate(basketId);
+                if (entry == null) {
+                    return Optional.empty();
+                }
+            }
+            T result;
+            var walPosition = 0L;
+            entry.lock.lock();
+            try {
+                // dropped by the flush in the meantime
+                if (entry.removed) {
+                    continue;
+                }
+                var events = entry.basket.getUnwrittenEvents();
+                var unwritten = events.size();
+                result = change.apply(entry.basket);
+                if (basketWal != null) {
+                    for (var i = unwritten; i < events.size(); i++) {
+                        walPosition = basketWal.append(events.get(i));
+                    }
+                }
+                entry.touch(!events.isEmpty());
+            } finally {
+                entry.lock.unlock();
+            }
+            // other changes go on while waiting for the sync
+            if (walPosition != 0) {
+                basketWal.awaitSync(walPosition);
+            }
+            return Optional.of(result);
+        }
+    }
+
+    // reads the basket if it is active, empty otherwise
+    public <T> Optional<T> read(Long basketId, Function<Basket, T> reader) {
+        var entry = entries.get(basketId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        entry.lock.lock();
+        try {
+            return entry.removed ? Optional.empty() : Optional.of(reader.apply(entry.basket));
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    // reads the basket together with its version if it is active, empty otherwise
+    public <T> Optional<T> readVersioned(Long basketId, BiFunction<BasketVersion, Basket, T> reader) {
+        var entry = entries.get(basketId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        entry.lock.lock();
+        try {
+            return entry.removed ? Optional.empty()
+                    : Optional.of(reader.apply(new BasketVersion(entry.epoch, entry.basket.getEventSequence()),
+                            entry.basket));
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    // version of the basket if it is active, empty otherwise
+    public Optional<BasketVersion> getVersion(Long basketId) {
+        return readVersioned(basketId, (version, basket) -> version);
+    }
+
+    // true if a basket held in memory has the discount
+    public boolean holdsDiscount(Long discountId) {
+        for (var entry : entries.values()) {
+            entry.lock.lock();
+            try {
+                if (!entry.removed && entry.basket.getDiscounts().stream()
+                        .anyMatch(discount -> discountId.equals(discount.getId()))) {
+                    return true;
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    // drops the basket without writing pending changes, used when it is deleted, a
+    // write of the basket already in progress is waited for, otherwise it could
+    // write the basket again after it was deleted
+    public void remove(Long basketId) {
+        var entry = entries.remove(basketId);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                entry.removed = true;
+                while (entry.events != null) {
+                    entry.writeDone.awaitUninterruptibly();
+                }
+                release(entry.basket.getUnwrittenEvents());
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${basket.store.flush-interval:PT1S}")
+    public void flush() {
+        flush(maxDirtyAge, false);
+    }
+
+    // writes all pending changes and snapshots, called on shutdown
+    @PreDestroy
+    public void drain() {
+        flush(Duration.ZERO, true);
+    }
+
+    void flush(Duration minDirtyAge, boolean snapshotAll) {
+        flushLock.lock();
+        try {
+            var now = System.nanoTime();
+            var due = new ArrayList<Entry>();
+            for (var entry : entries.values()) {
+                entry.lock.lock();
+                try {
+                    if (entry.removed) {
+                        continue;
+                    }
+                    var basket = entry.basket;
+                    var dirty = entry.dirtySince != 0 && now - entry.dirtySince >= minDirtyAge.toNanos();
+                    var idle = now - entry.lastAccess >= idleTimeout.toNanos();
+                    var eventsSinceSnapshot = basket.getEventSequence() - entry.writtenSequence;
+                    if (dirty || ((idle || snapshotAll) && eventsSinceSnapshot > 0)) {
+                        entry.events = List.copyOf(basket.getUnwrittenEvents());
+                        // a basket dropped from memory or left at shutdown is written as a
+                        // whole, so that reading it from the database needs no replay
+                        if (idle || snapshotAll || eventsSinceSnapshot >= snapshotInterval) {
+                            entry.snapshot = basket.copy();
+                        }
+                        entry.snapshotDirtySince = entry.dirtySince;
+                        entry.dirtySince = 0;
+                        due.add(entry);
+                    } else if (idle && entry.dirtySince == 0) {
+                        entry.removed = true;
+                        entries.remove(basket.getId(), entry);
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+            for (var from = 0; from < due.size(); from += flushBatchSize) {
+                write(due.subList(from, Math.min(from + flushBatchSize, due.size())));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // appends the events of all baskets of the batch and writes those due for a
+    // snapshot within one transaction
+    private void write(List<Entry> batch) {
+        try {
+            var written = transactionOperations.execute(status -> {
+                basketEventLog.append(batch.stream().flatMap(entry -> entry.events.stream()).toList());
+                var snapshotIds = batch.stream().filter(entry -> entry.snapshot != null)
+                        .map(entry -> entry.snapshot.getId()).toList();
+                if (!snapshotIds.isEmpty()) {
+                    // loads all baskets with one statement before merging them
+                    basketRepository.findAllById(snapshotIds);
+                }
+                return batch.stream()
+                        .map(entry -> entry.snapshot == null ? null : entityManager.merge(entry.snapshot)).toList();
+            });
+            for (var i = 0; i < batch.size(); i++) {
+                written(batch.get(i), written.get(i));
+            }
+            meterRegistry.counter("basket.store.flushed").increment(batch.size());
+            meterRegistry.counter("basket.store.snapshots")
+                    .increment(written.stream().filter(Objects::nonNull).count());
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // find the failing basket without failing the others
+                batch.forEach(entry -> write(List.of(entry)));
+            } else {
+                // the merge throws untranslated persistence exceptions
+                failed(batch.getFirst(), EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e));
+            }
+        }
+    }
+
+    // drops the written events, takes over the version and the ids of new items
+    // from the written snapshot
+    private void written(Entry entry, Basket written) {
+        entry.lock.lock();
+        try {
+            entry.basket.getUnwrittenEvents().subList(0, entry.events.size()).clear();
+            release(entry.events);
+            entry.events = null;
+            entry.failedWrites = 0;
+            if (written != null) {
+                entry.writtenSequence = entry.snapshot.getEventSequence();
+                entry.basket.setVersion(written.getVersion());
+                entry.basket.setUpdatedAt(written.getUpdatedAt());
+                for (var writtenItem : written.getItems()) {
+                    var item = entry.basket.getItem(writtenItem.getProductCode());
+                    if (item != null && item.getId() == null) {
+                        item.setId(writtenItem.getId());
+                    }
+                }
+            }
+            entry.snapshot = null;
+            entry.writeDone.signalAll();
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private void failed(Entry entry, RuntimeException e) {
+        meterRegistry.counter("basket.store.flush.failures").increment();
+        entry.lock.lock();
+        try {
+            entry.events = null;
+            entry.snapshot = null;
+            entry.failedWrites++;
+            if (e instanceof OptimisticLockingFailureException || e instanceof DataIntegrityViolationException
+                    || e instanceof DataRetrievalFailureException) {
+                // changed or deleted by someone else or refers to rows that are gone,
+                // writing it again fails the same way, the database wins, other errors
+                // like a lost connection may pass
+                LOGGER.warn("Dropping changes of basket {} rejected by the database", entry.basket.getId(), e);
+                drop(entry);
+            } else if (entry.failedWrites >= maxWriteAttempts) {
+                LOGGER.error("Dropping changes of basket {} after {} failed writes", entry.basket.getId(),
+                        entry.failedWrites, e);
+                drop(entry);
+            } else {
+                // keep the changes and try again with the next flush
+                LOGGER.warn("Failed to write basket {}", entry.basket.getId(), e);
+                entry.dirtySince = entry.snapshotDirtySince;
+            }
+            entry.writeDone.signalAll();
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private void drop(Entry entry) {
+        meterRegistry.counter("basket.store.dropped").increment();
+        entry.removed = true;
+        entries.remove(entry.basket.getId(), entry);
+        release(entry.basket.getUnwrittenEvents());
+    }
+
+    // loads the baskets with events in the write-ahead log and applies the events
+    // missing in the event log, they are written with the next flush
+    void recover() throws IOException {
+        var eventsByBasket = new LinkedHashMap<Long, List<BasketEvent>>();
+        for (var event : basketWal.recover()) {
+            eventsByBasket.computeIfAbsent(event.getBasketId(), id -> new ArrayList<>()).add(event);
+        }
+        var recovered = 0;
+        for (var basketEvents : eventsByBasket.values()) {
+            var basketId = basketEvents.getFirst().getBasketId();
+            var entry = load(basketId);
+            if (entry == null) {
+                // deleted before its events were written
+                basketWal.release(basketEvents);
+                continue;
+            }
+            var discounts = basketEventLog.getDiscounts(basketEvents);
+            var written = new ArrayList<BasketEvent>();
+            for (var event : basketEvents) {
+                if (!entry.basket.restore(event, discounts.get(event.getDiscountId()))) {
+                    written.add(event);
+                }
+            }
+            basketWal.release(written);
+            entry.touch(!entry.basket.getUnwrittenEvents().isEmpty());
+            recovered += basketEvents.size() - written.size();
+            entries.put(basketId, entry);
+        }
+        if (recovered > 0) {
+            LOGGER.info("Recovered {} unwritten events of {} baskets from the write-ahead log", recovered,
+                    eventsByBasket.size());
+        }
+    }
+
+    private void release(List<BasketEvent> events) {
+        if (basketWal != null && !events.isEmpty()) {
+            basketWal.release(events);
+        }
+    }
+
+    // loads the basket and holds it in memory, the basket is locked meanwhile, so the
+    // sweeper, which deletes only baskets not held in memory under the same lock,
+    // either sees it held or has deleted it before
+    private Entry activate(Long basketId) {
+        return transactionOperations.execute(status -> {
+            if (basketRepository.lockById(basketId).isEmpty()) {
+                return null;
+            }
+            var loadedEntry = load(basketId);
+            var entry = entries.putIfAbsent(basketId, loadedEntry);
+            return entry == null ? loadedEntry : entry;
+        });
+    }
+
+    // loads the latest snapshot of the basket and replays the events written after it
+    private Entry load(Long basketId) {
+        return transactionOperations.execute(status -> {
+            var basket = basketRepository.findWithItemsAndDiscountsById(basketId).orElse(null);
+            if (basket == null) {
+                return null;
+            }
+            entityManager.detach(basket);
+            var writtenSequence = basket.getEventSequence();
+            basketEventLog.replay(basket);
+            return new Entry(basket, writtenSequence);
+        });
+    }
+
+    private static final class Entry {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // signalled when the flush is done writing the basket
+        private final Condition writeDone = lock.newCondition();
+
+        private final Basket basket;
+
+        // never 0, see BasketVersion
+        private final long epoch = nextEpoch();
+
+        // time of the oldest unwritten event, 0 if there is none
+        private long dirtySince;
+
+        // event sequence of the basket as last written to the database
+        private long writtenSequence;
+
+        private long lastAccess = System.nanoTime();
+
+        private boolean removed;
+
+        // events and copy of the basket being written by the flush, no copy if the
+        // basket is not due for a snapshot
+        private List<BasketEvent> events;
+
+        private Basket snapshot;
+
+        private long snapshotDirtySince;
+
+        // writes failed in a row
+        private int failedWrites;
+
+        private Entry(Basket basket, long writtenSequence) {
+            this.basket = basket;
+            this.writtenSequence = writtenSequence;
+        }
+
+        private static long nextEpoch() {
+            long epoch;
+            do {
+                epoch = ThreadLocalRandom.current().nextLong();
+            } while (epoch == 0);
+            return epoch;
+        }
+
+        private void touch(boolean dirty) {
+            lastAccess = System.nanoTime();
+            if (dirty && dirtySince == 0) {
+                dirtySince = lastAccess;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+// deletes baskets not changed for longer than the time to live together with their
+// items, discount assignments and events, batch by batch in separate transactions,
+// so that baskets being scanned wait at most for one batch, baskets held in memory
+// are being changed and are never expired, the store loads a basket under the same
+// lock (see BasketStore.activate)
+@Component
+public class BasketSweeper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BasketSweeper.class);
+
+    private static final List<String> DELETE_SQL = List.of(
+            "DELETE FROM basket_events WHERE basket_id IN (:ids)",
+            "DELETE FROM basket_items WHERE basket_id IN (:ids)",
+            "DELETE FROM baskets_discounts WHERE basket_id IN (:ids)",
+            "DELETE FROM baskets WHERE id IN (:ids)");
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private BasketStore basketStore;
+
+    @Value("${basket.expiry.ttl:P30D}")
+    private Duration ttl;
+
+    @Value("${basket.expiry.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${basket.expiry.sweep-interval:PT10M}")
+    public void sweep() {
+        var evicted = sweep(LocalDateTime.now().minus(ttl));
+        if (evicted > 0) {
+            LOGGER.info("Evicted {} baskets not changed for {}", evicted, ttl);
+        }
+    }
+
+    // number of baskets deleted that were last changed before the given time
+    int sweep(LocalDateTime updatedBefore) {
+        var evicted = 0;
+        var afterId = 0L;
+        while (true) {
+            var lastId = afterId;
+            var batch = transactionOperations.execute(status -> {
+                // locked until the end of the batch, a concurrent change of one of the
+                // baskets waits for it and fails on the deleted basket
+                var ids = basketRepository.findExpiredIds(updatedBefore, lastId, Limit.of(batchSize));
+                var expiredIds = ids.stream().filter(id -> !isActive(id)).toList();
+                if (!expiredIds.isEmpty()) {
+                    delete(expiredIds);
+                }
+                return new Batch(ids, expiredIds.size());
+            });
+            evicted += batch.evicted();
+            meterRegistry.counter("basket.expiry.evicted").increment(batch.evicted());
+            if (batch.ids().size() < batchSize) {
+                return evicted;
+            }
+            afterId = batch.ids().getLast();
+        }
+    }
+
+    // deletes the baskets with their items, discount assignments and events within
+    // the current transaction
+    void delete(List<Long> basketIds) {
+        var parameters = Map.of("ids", basketIds);
+        DELETE_SQL.forEach(sql -> jdbcTemplate.update(sql, parameters));
+    }
+
+    private boolean isActive(Long basketId) {
+        return basketStore != null && basketStore.read(basketId, basket -> true).isPresent();
+    }
+
+    private record Batch(List<Long> ids, int evicted) {
+    }
+}
@@ -0,0 +1,7 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+
+// total of one basket as streamed by the bulk total calculation
+public record BasketTotal(Long basketId, BigDecimal total) {
+}
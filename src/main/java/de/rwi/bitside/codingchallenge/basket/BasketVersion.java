@@ -0,0 +1,13 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+// version of a basket for conditional reads and cached totals, the event sequence
+// alone can repeat, events not written yet are lost when a basket held in memory
+// is dropped or the application crashes, and the next change takes the same number
+// again, so every load of a basket into memory starts a new epoch, baskets read
+// from the database have epoch 0 as written events are never lost
+public record BasketVersion(long epoch, long eventSequence) {
+
+    public String tag() {
+        return epoch == 0 ? Long.toString(eventSequence) : Long.toHexString(epoch) + "-" + eventSequence;
+    }
+}
@@ -0,0 +1,320 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// write-ahead log of the events of baskets held in memory, every event is one fixed
+// size record in a memory-mapped segment file, the records written since the last
+// sync are forced to disk together, a segment is deleted once all of its events
+// are in the database
+@Component
+@ConditionalOnProperty(name = "basket.wal.enabled", havingValue = "true")
+public class BasketWal {
+
+    static final int RECORD_SIZE = 96;
+
+    private static final int MAX_PRODUCT_CODE_BYTES = 40;
+
+    private static final int CHECKSUM_OFFSET = 92;
+
+    private static final String SEGMENT_PREFIX = "basket-wal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition syncedCondition = lock.newCondition();
+
+    // all segments not deleted yet by number, the last one is appended to
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private Segment current;
+
+    // records appended and forced to disk since the start, records are synced in
+    // the order they were appended
+    private long appendedRecords;
+
+    private long syncedRecords;
+
+    // segments of the previous run are kept until their events are recovered
+    private boolean recovered;
+
+    @Value("${basket.wal.directory:wal}")
+    private Path directory;
+
+    @Value("${basket.wal.segment-records:65536}")
+    private int segmentRecords;
+
+    // a change returns only once its events are on disk
+    @Value("${basket.wal.wait-for-sync:true}")
+    private boolean waitForSync;
+
+    // records the segments left by the previous run to be recovered, and starts a
+    // new segment after them
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            for (var file : files.toList()) {
+                var name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    var number = Long.parseLong(name, SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length(), 10);
+                    segments.put(number, new Segment(number, file, null));
+                }
+            }
+        }
+        roll();
+    }
+
+    // events of all segments left by the previous run in the order they were
+    // appended, a torn record ends its segment, the events count as pending until
+    // they are released
+    public List<BasketEvent> recover() throws IOException {
+        var events = new ArrayList<BasketEvent>();
+        lock.lock();
+        try {
+            for (var segment : segments.values()) {
+                if (segment == current) {
+                    continue;
+                }
+                var buffer = ByteBuffer.wrap(Files.readAllBytes(segment.path));
+                for (var offset = 0; offset + RECORD_SIZE <= buffer.limit(); offset += RECORD_SIZE) {
+                    var event = decode(buffer, offset);
+                    if (event == null) {
+                        break;
+                    }
+                    event.setWalSegment(segment.number);
+                    segment.pending++;
+                    events.add(event);
+                }
+            }
+            recovered = true;
+            deleteReleasedSegments();
+        } finally {
+            lock.unlock();
+        }
+        return events;
+    }
+
+    // appends the event and returns its position to wait for its sync
+    public long append(BasketEvent event) {
+        lock.lock();
+        try {
+            if (current.records == segmentRecords) {
+                roll();
+            }
+            encode(current.buffer, current.records * RECORD_SIZE, event);
+            current.records++;
+            current.pending++;
+            event.setWalSegment(current.number);
+            return ++appendedRecords;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // waits until the record at the given position is on disk if configured
+    public void awaitSync(long position) {
+        if (!waitForSync) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (syncedRecords < position) {
+                syncedCondition.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the events are in the database or will never be, their segments can go
+    public void release(List<BasketEvent> events) {
+        lock.lock();
+        try {
+            for (var event : events) {
+                var segment = segments.get(event.getWalSegment());
+                if (segment != null) {
+                    segment.pending--;
+                }
+            }
+            deleteReleasedSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // group sync, forces all records appended since the last sync to disk at once
+    @Scheduled(fixedDelayString = "${basket.wal.sync-interval:PT0.005S}")
+    public void sync() {
+        long target;
+        var unsynced = new ArrayList<Segment>();
+        var unsyncedTo = new ArrayList<Integer>();
+        lock.lock();
+        try {
+            target = appendedRecords;
+            for (var segment : segments.values()) {
+                if (segment.buffer != null && segment.syncedRecords < segment.records) {
+                    unsynced.add(segment);
+                    unsyncedTo.add(segment.records);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // forcing takes long and must not block appends
+        for (var i = 0; i < unsynced.size(); i++) {
+            var segment = unsynced.get(i);
+            var from = segment.syncedRecords * RECORD_SIZE;
+            segment.buffer.force(from, unsyncedTo.get(i) * RECORD_SIZE - from);
+        }
+        lock.lock();
+        try {
+            for (var i = 0; i < unsynced.size(); i++) {
+                unsynced.get(i).syncedRecords = unsyncedTo.get(i);
+            }
+            syncedRecords = Math.max(syncedRecords, target);
+            syncedCondition.signalAll();
+            deleteReleasedSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        sync();
+    }
+
+    int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void roll() throws IOException {
+        var number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        var path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            current = new Segment(number, path,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE));
+        }
+        segments.put(number, current);
+    }
+
+    // deletes all segments but the current one whose events are released and whose
+    // records are synced, so that the next recovery does not read them again
+    private void deleteReleasedSegments() {
+        if (!recovered) {
+            return;
+        }
+        var iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            var segment = iterator.next();
+            if (segment != current && segment.pending <= 0 && segment.syncedRecords >= segment.records) {
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    // basket id, sequence number, unit price, discount id, timestamp, quantity, type,
+    // product code and a checksum of all of them
+    private static void encode(MappedByteBuffer buffer, int offset, BasketEvent event) {
+        var code = event.getProductCode() == null ? new byte[0]
+                : event.getProductCode().getBytes(StandardCharsets.UTF_8);
+        if (code.length > MAX_PRODUCT_CODE_BYTES) {
+            throw new IllegalArgumentException("Product code " + event.getProductCode() + " is too long");
+        }
+        buffer.putLong(offset, event.getBasketId());
+        buffer.putLong(offset + 8, event.getSequenceNumber());
+        buffer.putLong(offset + 16, event.getUnitPriceCents());
+        buffer.putLong(offset + 24, event.getDiscountId() == null ? 0 : event.getDiscountId());
+        buffer.putLong(offset + 32,
+                event.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        buffer.putInt(offset + 40, event.getQuantity());
+        buffer.put(offset + 44, (byte) event.getType().ordinal());
+        buffer.put(offset + 45, (byte) code.length);
+        buffer.put(offset + 46, code);
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(buffer, offset));
+    }
+
+    private static BasketEvent decode(ByteBuffer buffer, int offset) {
+        var basketId = buffer.getLong(offset);
+        if (basketId == 0 || buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(buffer, offset)) {
+            return null;
+        }
+        var code = new byte[buffer.get(offset + 45)];
+        buffer.get(offset + 46, code);
+        var discountId = buffer.getLong(offset + 24);
+        return BasketEvent.restored(basketId, buffer.getLong(offset + 8),
+                BasketEventType.values()[buffer.get(offset + 44)],
+                code.length == 0 ? null : new String(code, StandardCharsets.UTF_8), buffer.getInt(offset + 40),
+                buffer.getLong(offset + 16), discountId == 0 ? null : discountId,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong(offset + 32)), ZoneId.systemDefault()));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        var crc = new CRC32();
+        crc.update(buffer.slice(offset, CHECKSUM_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+
+        private final long number;
+
+        private final Path path;
+
+        // null for segments of the previous run, they are only read
+        private final MappedByteBuffer buffer;
+
+        private int records;
+
+        private int syncedRecords;
+
+        // events not in the database yet
+        private int pending;
+
+        private Segment(long number, Path path, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.stereotype.Component;
+
+import de.rwi.bitside.codingchallenge.money.Money;
+import jakarta.annotation.PreDestroy;
+
+// prices a basket in a single pass over its line items without modifying it
+@Component
+public class PricingEngine {
+
+    // prices many baskets at once with one thread per core, separate from the
+    // common pool so that bulk pricing does not slow down other parallel work
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public BigDecimal calculateTotal(Basket basket) {
+        return Money.fromCents(calculateTotalCents(basket));
+    }
+
+    // sums up in hundredths of a cent and rounds half up to cents once at the end
+    public long calculateTotalCents(Basket basket) {
+        var discountIndex = basket.getDiscountIndex();
+        var totalSubCents = 0L;
+        for (var item : basket.getItems()) {
+            var subTotal = item.getUnitPriceCents() * item.getQuantity() * Money.SUB_CENTS_PER_CENT;
+            var savings = discountIndex.calculateSavings(item.getPackedProductCode(), item.getProductCode(),
+                    item.getUnitPriceCents(), item.getQuantity());
+            totalSubCents += subTotal - savings;
+        }
+        return Money.roundToCents(totalSubCents);
+    }
+
+    // totals of the baskets in cents in the same order, the baskets are priced in
+    // parallel and must not be shared with other threads meanwhile
+    public long[] calculateTotalsCents(List<Basket> baskets) {
+        return pool.submit(() -> baskets.parallelStream().mapToLong(this::calculateTotalCents).toArray()).join();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    // prices every line and the basket within the same pass, the total equals
+    // calculateTotal
+    public Receipt createReceipt(Basket basket) {
+        var discountIndex = basket.getDiscountIndex();
+        var items = new ArrayList<>(basket.getItems());
+        items.sort(Comparator.comparing(BasketItem::getProductCode));
+        var lines = new ArrayList<Receipt.Line>(items.size());
+        var subtotalCents = 0L;
+        var savingsSubCents = 0L;
+        for (var item : items) {
+            var lineSubtotalCents = item.getUnitPriceCents() * item.getQuantity();
+            var discount = discountIndex.findBestDiscount(item.getPackedProductCode(), item.getProductCode(),
+                    item.getUnitPriceCents(), item.getQuantity());
+            var lineSavings = discount == null ? 0
+                    : discount.getEvaluator().calculateSavings(item.getUnitPriceCents(), item.getQuantity());
+            lines.add(new Receipt.Line(item.getProductCode(), item.getQuantity(), item.getUnitPrice(),
+                    Money.fromCents(lineSubtotalCents), discount, Money.fromSubCents(lineSavings)));
+            subtotalCents += lineSubtotalCents;
+            savingsSubCents += lineSavings;
+        }
+        return new Receipt(lines, Money.fromCents(subtotalCents), Money.fromSubCents(savingsSubCents),
+                Money.fromCents(Money.roundToCents(subtotalCents * Money.SUB_CENTS_PER_CENT - savingsSubCents)));
+    }
+}
@@ -0,0 +1,15 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+
+// itemized prices of a basket, one line per product code ordered by code, the
+// discount of a line is the one applied to it or null
+public record Receipt(List<Line> lines, BigDecimal subtotal, BigDecimal savings, BigDecimal total) {
+
+    public record Line(String productCode, int quantity, BigDecimal unitPrice, BigDecimal subtotal, Discount discount,
+            BigDecimal savings) {
+    }
+}
@@ -0,0 +1,19 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+// a scanned product code, either given as plain string or together with a quantity
+public record ScanRequest(String code, Integer quantity) {
+
+    // units of one code per scan
+    public static final int MAX_QUANTITY = 10_000;
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static ScanRequest of(String code) {
+        return new ScanRequest(code, null);
+    }
+
+    public int quantityOrDefault() {
+        return quantity == null ? 1 : quantity;
+    }
+}
@@ -0,0 +1,15 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.util.List;
+
+// outcome of a batch scan, scanned counts the units added to the basket
+public record ScanResult(int scanned, List<Failure> failures) {
+
+    public record Failure(String code, Reason reason) {
+    }
+
+    public enum Reason {
+        PRODUCT_NOT_FOUND,
+        INVALID_QUANTITY
+    }
+}
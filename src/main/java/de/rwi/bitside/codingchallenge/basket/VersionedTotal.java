@@ -0,0 +1,7 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+
+// total of a basket and the version of the basket it was calculated for
+public record VersionedTotal(BasketVersion version, BigDecimal total) {
+}
@@ -0,0 +1,13 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+import de.rwi.bitside.codingchallenge.money.Money;
+
+// a fixed amount off every unit, never more than the price of the unit
+record AmountOffEvaluator(long amountCents) implements DiscountEvaluator {
+
+    @Override
+    public long calculateSavings(long unitPriceCents, int quantity) {
+        return Math.multiplyExact(Math.multiplyExact(Math.min(unitPriceCents, amountCents), quantity),
+                Money.SUB_CENTS_PER_CENT);
+    }
+}
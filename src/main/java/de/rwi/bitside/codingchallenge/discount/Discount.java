@@ -1,15 +1,19 @@
 package de.rwi.bitside.codingchallenge.discount;
 
 import java.time.LocalDateTime;
+import java.util.Objects;
 
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
@@ -36,6 +40,10 @@ public class Discount {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    // compiled from the type on first use, null until then
+    @Transient
+    private DiscountEvaluator evaluator;
+
     public Long getId() {
         return id;
     }
@@ -50,6 +58,15 @@ public class Discount {
 
     public void setType(DiscountType type) {
         this.type = type;
+        this.evaluator = null;
+    }
+
+    @JsonIgnore
+    public DiscountEvaluator getEvaluator() {
+        if (evaluator == null) {
+            evaluator = type.getEvaluator();
+        }
+        return evaluator;
     }
 
     public String getProductCode() {
@@ -75,4 +92,19 @@ public class Discount {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    // discounts loaded in different transactions are the same discount if they have
+    // the same id, e.g. when a basket held in memory gets a discount removed
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return id != null && obj instanceof Discount other && id.equals(other.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return id == null ? System.identityHashCode(this) : Objects.hashCode(id);
+    }
 }
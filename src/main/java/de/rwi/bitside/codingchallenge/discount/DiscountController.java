@@ -3,6 +3,7 @@ package de.rwi.bitside.codingchallenge.discount;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -59,4 +60,9 @@ public class DiscountController {
     ResponseEntity<Void> handle(DiscountNotFoundException e) {
         return ResponseEntity.notFound().build();
     }
+
+    @ExceptionHandler(DiscountInUseException.class)
+    ResponseEntity<Void> handle(DiscountInUseException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
 }
@@ -0,0 +1,10 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+// the calculation of a kind of discount, compiled once per discount and called for
+// every line the discount is applicable to, so it must not allocate
+public interface DiscountEvaluator {
+
+    // exact discount value in hundredths of a cent for a line of the given quantity
+    // of one product
+    long calculateSavings(long unitPriceCents, int quantity);
+}
@@ -0,0 +1,8 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+public class DiscountInUseException extends RuntimeException {
+
+    public DiscountInUseException() {
+        super("Discount is applied to baskets");
+    }
+}
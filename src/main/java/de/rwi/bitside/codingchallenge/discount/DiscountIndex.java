@@ -0,0 +1,134 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.rwi.bitside.codingchallenge.product.ProductCode;
+import de.rwi.bitside.codingchallenge.product.ProductCodeMap;
+
+// discounts grouped by the product code they are applicable to, looked up by packed
+// product code, codes that cannot be packed by string, the evaluators of the
+// discounts of a code are kept next to them so that pricing does not go through the
+// discounts
+public class DiscountIndex {
+
+    private static final DiscountEvaluator[] NO_EVALUATORS = {};
+
+    private final ProductCodeMap<Discounts> discountsByPackedCode = new ProductCodeMap<>();
+
+    private final Map<String, Discounts> discountsByUnpackableCode = new HashMap<>();
+
+    public DiscountIndex(Collection<Discount> discounts) {
+        discounts.forEach(this::add);
+    }
+
+    public void add(Discount discount) {
+        var code = discount.getProductCode();
+        var packedCode = ProductCode.pack(code);
+        var discounts = find(packedCode, code);
+        if (discounts == null) {
+            discounts = new Discounts();
+            if (packedCode == ProductCode.NOT_PACKABLE) {
+                discountsByUnpackableCode.put(code, discounts);
+            } else {
+                discountsByPackedCode.put(packedCode, discounts);
+            }
+        }
+        discounts.add(discount);
+    }
+
+    public void remove(Discount discount) {
+        var code = discount.getProductCode();
+        var packedCode = ProductCode.pack(code);
+        var discounts = find(packedCode, code);
+        if (discounts != null && discounts.remove(discount) && discounts.discounts.isEmpty()) {
+            if (packedCode == ProductCode.NOT_PACKABLE) {
+                discountsByUnpackableCode.remove(code);
+            } else {
+                discountsByPackedCode.remove(packedCode);
+            }
+        }
+    }
+
+    public List<Discount> getDiscounts(String productCode) {
+        var discounts = find(ProductCode.pack(productCode), productCode);
+        return discounts == null ? Collections.emptyList() : Collections.unmodifiableList(discounts.discounts);
+    }
+
+    // the discount applied by calculateSavings, null if none saves anything
+    public Discount findBestDiscount(long packedCode, String productCode, long unitPriceCents, int quantity) {
+        var discounts = find(packedCode, productCode);
+        if (discounts == null) {
+            return null;
+        }
+        var evaluators = discounts.evaluators;
+        var best = -1;
+        var bestSavings = 0L;
+        for (var i = 0; i < evaluators.length; i++) {
+            var savings = evaluators[i].calculateSavings(unitPriceCents, quantity);
+            if (savings > bestSavings) {
+                best = i;
+                bestSavings = savings;
+            }
+        }
+        return best < 0 ? null : discounts.discounts.get(best);
+    }
+
+    public long calculateSavings(String productCode, long unitPriceCents, int quantity) {
+        return calculateSavings(ProductCode.pack(productCode), productCode, unitPriceCents, quantity);
+    }
+
+    // savings in hundredths of a cent, if more than one discount matches the product
+    // code, the one in favour of the customer is applied to the whole line, the
+    // packed code is taken from ProductCode.pack and the string is only used if the
+    // code cannot be packed
+    public long calculateSavings(long packedCode, String productCode, long unitPriceCents, int quantity) {
+        var discounts = find(packedCode, productCode);
+        if (discounts == null) {
+            return 0;
+        }
+        var evaluators = discounts.evaluators;
+        var savings = 0L;
+        for (var i = 0; i < evaluators.length; i++) {
+            savings = Math.max(savings, evaluators[i].calculateSavings(unitPriceCents, quantity));
+        }
+        return savings;
+    }
+
+    private Discounts find(long packedCode, String productCode) {
+        return packedCode == ProductCode.NOT_PACKABLE ? discountsByUnpackableCode.get(productCode)
+                : discountsByPackedCode.get(packedCode);
+    }
+
+    // the discounts of one product code and their evaluators in the same order
+    private static final class Discounts {
+
+        private final List<Discount> discounts = new ArrayList<>(1);
+
+        private DiscountEvaluator[] evaluators = NO_EVALUATORS;
+
+        private void add(Discount discount) {
+            discounts.add(discount);
+            compile();
+        }
+
+        private boolean remove(Discount discount) {
+            if (!discounts.remove(discount)) {
+                return false;
+            }
+            compile();
+            return true;
+        }
+
+        private void compile() {
+            evaluators = new DiscountEvaluator[discounts.size()];
+            for (var i = 0; i < evaluators.length; i++) {
+                evaluators[i] = discounts.get(i).getEvaluator();
+            }
+        }
+    }
+}
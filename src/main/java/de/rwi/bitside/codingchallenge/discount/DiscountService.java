@@ -1,36 +1,84 @@
 package de.rwi.bitside.codingchallenge.discount;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
+import de.rwi.bitside.codingchallenge.basket.BasketService;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Service
+@Timed(value = "discount.service", histogram = true, percentiles = { 0.5, 0.95, 0.99 })
 public class DiscountService {
 
     @Autowired
     private DiscountRepository discountRepository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // looked up on use, the baskets depend on the discounts
+    @Autowired
+    private ObjectProvider<DiscountUsage> discountUsage;
+
     public List<Discount> getDiscounts() {
         return discountRepository.findAll();
     }
 
     public Discount getDiscountById(Long id) {
-        return discountRepository.findById(id).orElseThrow(() -> new DiscountNotFoundException());
+        return discountRepository.findById(id).orElseThrow(this::discountNotFound);
+    }
+
+    // resolves all ids with a single query, unknown ids are missing in the result
+    public Map<Long, Discount> getDiscountsByIds(Collection<Long> ids) {
+        var discounts = new HashMap<Long, Discount>();
+        if (!ids.isEmpty()) {
+            for (var discount : discountRepository.findAllById(ids)) {
+                discounts.put(discount.getId(), discount);
+            }
+        }
+        return discounts;
     }
 
     public Discount createDiscount(Discount discount) {
         return discountRepository.save(discount);
     }
 
+    // baskets keep the savings of their discounts, so type and product code of a
+    // discount applied to a basket cannot change, cached totals are dropped anyway
+    @CacheEvict(cacheNames = BasketService.BASKET_TOTALS_CACHE, allEntries = true)
     public Discount updateDiscount(Long id, Discount discount) {
-        var existingDiscount = discountRepository.findById(id).orElseThrow(() -> new DiscountNotFoundException());
+        var existingDiscount = discountRepository.findById(id).orElseThrow(this::discountNotFound);
+        var changed = existingDiscount.getType() != discount.getType()
+                || !existingDiscount.getProductCode().equals(discount.getProductCode());
+        var usage = discountUsage.getIfAvailable();
+        if (changed && usage != null && usage.isInUse(id)) {
+            throw new DiscountInUseException();
+        }
         existingDiscount.setType(discount.getType());
         existingDiscount.setProductCode(discount.getProductCode());
         return discountRepository.save(existingDiscount);
     }
 
+    // a discount applied to a basket cannot be deleted, the basket refers to it
+    @CacheEvict(cacheNames = BasketService.BASKET_TOTALS_CACHE, allEntries = true)
     public void deleteDiscount(Long id) {
+        var usage = discountUsage.getIfAvailable();
+        if (usage != null && usage.isInUse(id)) {
+            throw new DiscountInUseException();
+        }
         discountRepository.deleteById(id);
     }
+
+    private DiscountNotFoundException discountNotFound() {
+        meterRegistry.counter("entity.not.found", "entity", "discount").increment();
+        return new DiscountNotFoundException();
+    }
 }
@@ -1,17 +1,22 @@
 package de.rwi.bitside.codingchallenge.discount;
 
+// kinds of discounts, each with the evaluator that calculates it, types are stored
+// by ordinal, so new ones are added at the end
 public enum DiscountType {
 
-    BUY_1_GET_1_FREE(50.0),
-    TEN_PERCENT_OFF(10.0);
+    BUY_1_GET_1_FREE(new MultiBuyEvaluator(2, 1)),
+    TEN_PERCENT_OFF(new PercentageOffEvaluator(10)),
+    THREE_FOR_TWO(new MultiBuyEvaluator(3, 2)),
+    FIFTY_CENTS_OFF(new AmountOffEvaluator(50));
 
-    private final double percentage;
+    private final DiscountEvaluator evaluator;
 
-    DiscountType(double percentage) {
-        this.percentage = percentage;
+    DiscountType(DiscountEvaluator evaluator) {
+        this.evaluator = evaluator;
     }
 
-    public double getPercentage() {
-        return percentage;
+    // shared by all discounts of this type, discounts have no parameters of their own
+    DiscountEvaluator getEvaluator() {
+        return evaluator;
     }
 }
@@ -0,0 +1,8 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+// tells whether a discount is applied to any basket, implemented where the baskets
+// are kept
+public interface DiscountUsage {
+
+    boolean isInUse(Long discountId);
+}
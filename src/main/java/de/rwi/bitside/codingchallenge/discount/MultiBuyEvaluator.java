@@ -0,0 +1,14 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+import de.rwi.bitside.codingchallenge.money.Money;
+
+// every complete group of the given number of units costs only the price of fewer
+// units, e.g. 3 for 2
+record MultiBuyEvaluator(int units, int paidUnits) implements DiscountEvaluator {
+
+    @Override
+    public long calculateSavings(long unitPriceCents, int quantity) {
+        return Math.multiplyExact(Math.multiplyExact(unitPriceCents, (long) (quantity / units) * (units - paidUnits)),
+                Money.SUB_CENTS_PER_CENT);
+    }
+}
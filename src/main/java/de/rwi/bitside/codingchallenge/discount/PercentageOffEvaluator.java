@@ -0,0 +1,11 @@
+package de.rwi.bitside.codingchallenge.discount;
+
+// a percentage of the price of every unit
+record PercentageOffEvaluator(int percentage) implements DiscountEvaluator {
+
+    @Override
+    public long calculateSavings(long unitPriceCents, int quantity) {
+        // a percentage of cents is the same number of hundredths of a cent
+        return Math.multiplyExact(Math.multiplyExact(unitPriceCents, quantity), percentage);
+    }
+}
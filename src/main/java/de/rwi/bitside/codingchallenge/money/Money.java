@@ -0,0 +1,35 @@
+package de.rwi.bitside.codingchallenge.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// amounts are handled as long minor units inside the pricing path, BigDecimal is
+// only used at the API boundary
+public final class Money {
+
+    // discounts are calculated exactly in hundredths of a cent and only the basket
+    // total is rounded to cents
+    public static final long SUB_CENTS_PER_CENT = 100;
+
+    private Money() {
+    }
+
+    // prices with more than two decimals are rounded half up to whole cents
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public static BigDecimal fromSubCents(long subCents) {
+        return BigDecimal.valueOf(subCents, 4);
+    }
+
+    // rounds half up, i.e. away from zero for an exact half
+    public static long roundToCents(long subCents) {
+        var half = SUB_CENTS_PER_CENT / 2;
+        return subCents >= 0 ? (subCents + half) / SUB_CENTS_PER_CENT : -((-subCents + half) / SUB_CENTS_PER_CENT);
+    }
+}
@@ -0,0 +1,53 @@
+package de.rwi.bitside.codingchallenge.product;
+
+// packs product codes of up to 10 digits, letters and '-' into a long with 6 bits
+// per character, so that they can be looked up without string hashing, a packed
+// code is never 0, codes with other characters cannot be packed
+public final class ProductCode {
+
+    public static final long NOT_PACKABLE = -1;
+
+    public static final int MAX_PACKED_LENGTH = 10;
+
+    private static final int BITS_PER_CHAR = 6;
+
+    private static final String CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-";
+
+    // 6 bit value of every ASCII character plus one, 0 if it cannot be packed
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (var i = 0; i < CHARS.length(); i++) {
+            VALUES[CHARS.charAt(i)] = (byte) (i + 1);
+        }
+    }
+
+    private ProductCode() {
+    }
+
+    public static long pack(String code) {
+        var length = code.length();
+        if (length == 0 || length > MAX_PACKED_LENGTH) {
+            return NOT_PACKABLE;
+        }
+        var packed = 0L;
+        for (var i = 0; i < length; i++) {
+            var c = code.charAt(i);
+            var value = c < VALUES.length ? VALUES[c] : 0;
+            if (value == 0) {
+                return NOT_PACKABLE;
+            }
+            packed = packed << BITS_PER_CHAR | value;
+        }
+        return packed;
+    }
+
+    public static String unpack(long packed) {
+        var chars = new char[MAX_PACKED_LENGTH];
+        var start = chars.length;
+        for (; packed != 0; packed >>>= BITS_PER_CHAR) {
+            chars[--start] = CHARS.charAt((int) (packed & ((1 << BITS_PER_CHAR) - 1)) - 1);
+        }
+        return new String(chars, start, chars.length - start);
+    }
+}
@@ -0,0 +1,101 @@
+package de.rwi.bitside.codingchallenge.product;
+
+// map from packed product codes to values with open addressing and linear probing in
+// two parallel arrays, without boxing the keys or allocating per entry, 0 marks a free
+// slot as no packed code is 0
+public class ProductCodeMap<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long packedCode) {
+        var mask = keys.length - 1;
+        for (var slot = slot(packedCode, mask);; slot = (slot + 1) & mask) {
+            if (keys[slot] == packedCode) {
+                return (V) values[slot];
+            }
+            if (keys[slot] == 0) {
+                return null;
+            }
+        }
+    }
+
+    public void put(long packedCode, V value) {
+        if (packedCode == 0 || packedCode == ProductCode.NOT_PACKABLE) {
+            throw new IllegalArgumentException("Not a packed product code: " + packedCode);
+        }
+        // at most half full, so that probe sequences stay short
+        if (2 * (size + 1) > keys.length) {
+            resize(2 * keys.length);
+        }
+        var mask = keys.length - 1;
+        var slot = slot(packedCode, mask);
+        while (keys[slot] != 0 && keys[slot] != packedCode) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == 0) {
+            keys[slot] = packedCode;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    public void remove(long packedCode) {
+        var mask = keys.length - 1;
+        var slot = slot(packedCode, mask);
+        while (keys[slot] != packedCode) {
+            if (keys[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // moves later entries of the probe sequence into the gap instead of leaving a
+        // tombstone
+        var gap = slot;
+        for (slot = (slot + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            var home = slot(keys[slot], mask);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        var mask = capacity - 1;
+        for (var i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                var slot = slot(oldKeys[i], mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // spreads the packed characters over the slots, the last characters alone would
+    // put codes with a common suffix into the same slots
+    private static int slot(long packedCode, int mask) {
+        return (int) ((packedCode * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -1,8 +1,12 @@
 package de.rwi.bitside.codingchallenge.product;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -11,6 +15,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
@@ -24,6 +29,9 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductImportService productImportService;
+
     @GetMapping
     List<Product> getProducts() {
         return productService.getProducts();
@@ -43,6 +51,14 @@ public class ProductController {
         return ResponseEntity.created(url).build();
     }
 
+    @PostMapping(path = "/import", consumes = { "text/csv", MediaType.APPLICATION_NDJSON_VALUE })
+    ResponseEntity<ProductImportResult> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) throws IOException {
+        var format = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType) ? ProductImportFormat.NDJSON
+                : ProductImportFormat.CSV;
+        return ResponseEntity.ok(productImportService.importProducts(body, format));
+    }
+
     @PutMapping("/{id}")
     ResponseEntity<Void> updateProduct(@PathVariable Long id, @Valid @RequestBody Product product) {
         productService.updateProduct(id, product);
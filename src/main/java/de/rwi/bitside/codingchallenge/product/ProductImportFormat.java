@@ -0,0 +1,9 @@
+package de.rwi.bitside.codingchallenge.product;
+
+public enum ProductImportFormat {
+
+    // one "code,price" line per product, optionally preceded by a header line
+    CSV,
+    // one JSON product per line
+    NDJSON
+}
@@ -0,0 +1,11 @@
+package de.rwi.bitside.codingchallenge.product;
+
+import java.util.List;
+
+// outcome of a bulk import, only the first rejections are listed in detail
+public record ProductImportResult(long imported, long rejected, List<Rejection> rejections, long durationMillis,
+        long rowsPerSecond) {
+
+    public record Rejection(long line, String reason) {
+    }
+}
@@ -0,0 +1,157 @@
+package de.rwi.bitside.codingchallenge.product;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.Validator;
+
+// imports products line by line and upserts them by code in JDBC batches, the
+// input is never held in memory as a whole
+@Service
+public class ProductImportService {
+
+    static final int MAX_LISTED_REJECTIONS = 100;
+
+    private static final String UPSERT_SQL = """
+            MERGE INTO products p
+            USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS NUMERIC(38, 2)), CAST(? AS TIMESTAMP))) s(code, price, ts)
+            ON p.code = s.code
+            WHEN MATCHED THEN UPDATE SET price = s.price, updated_at = s.ts
+            WHEN NOT MATCHED THEN INSERT (code, price, created_at, updated_at) VALUES (s.code, s.price, s.ts, s.ts)
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${product.import.batch-size:1000}")
+    private int batchSize;
+
+    public ProductImportResult importProducts(InputStream input, ProductImportFormat format) throws IOException {
+        var start = System.nanoTime();
+        var imported = 0L;
+        var rejected = 0L;
+        var rejections = new ArrayList<ProductImportResult.Rejection>();
+        var batch = new ArrayList<Object[]>(batchSize);
+        try (var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            var lineNumber = 0L;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && isCsvHeader(line, format))) {
+                    continue;
+                }
+                try {
+                    var product = parse(line, format);
+                    validate(product);
+                    batch.add(new Object[] { product.getCode(), product.getPrice(), null });
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    if (rejections.size() < MAX_LISTED_REJECTIONS) {
+                        rejections.add(new ProductImportResult.Rejection(lineNumber, e.getMessage()));
+                    }
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    imported += upsert(batch);
+                    batch.clear();
+                }
+            }
+        }
+        imported += upsert(batch);
+        cacheManager.getCache(ProductService.PRODUCTS_BY_CODE_CACHE).clear();
+        var durationMillis = (System.nanoTime() - start) / 1_000_000;
+        var rowsPerSecond = (imported + rejected) * 1000 / Math.max(durationMillis, 1);
+        return new ProductImportResult(imported, rejected, rejections, durationMillis, rowsPerSecond);
+    }
+
+    // only the exact column names, a product whose code starts with "code" is a row
+    private boolean isCsvHeader(String line, ProductImportFormat format) {
+        if (format != ProductImportFormat.CSV) {
+            return false;
+        }
+        var columns = line.split(",", -1);
+        return columns.length == 2 && columns[0].trim().equalsIgnoreCase("code")
+                && columns[1].trim().equalsIgnoreCase("price");
+    }
+
+    private Product parse(String line, ProductImportFormat format) {
+        return switch (format) {
+            case CSV -> parseCsv(line);
+            case NDJSON -> parseJson(line);
+        };
+    }
+
+    private Product parseCsv(String line) {
+        var columns = line.split(",", -1);
+        if (columns.length != 2) {
+            throw new IllegalArgumentException("expected 2 columns but got " + columns.length);
+        }
+        var product = new Product();
+        product.setCode(columns[0].trim());
+        try {
+            product.setPrice(columns[1].isBlank() ? null : new BigDecimal(columns[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("price: not a number");
+        }
+        return product;
+    }
+
+    private Product parseJson(String line) {
+        try {
+            return objectMapper.readValue(line, Product.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("invalid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private void validate(Product product) {
+        var violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private int upsert(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        var timestamp = Timestamp.valueOf(LocalDateTime.now());
+        batch.forEach(row -> row[2] = timestamp);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, batch));
+        return batch.size();
+    }
+}
@@ -1,5 +1,7 @@
 package de.rwi.bitside.codingchallenge.product;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,4 +9,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface ProductRepository extends JpaRepository<Product, Long> {
 
     Optional<Product> findByCode(String code);
+
+    List<Product> findByCodeIn(Collection<String> codes);
 }
@@ -1,40 +1,93 @@
 package de.rwi.bitside.codingchallenge.product;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Service
+@Timed(value = "product.service", histogram = true, percentiles = { 0.5, 0.95, 0.99 })
 public class ProductService {
 
+    // products looked up by code on the scan path, see spring.cache.caffeine.spec
+    public static final String PRODUCTS_BY_CODE_CACHE = "productsByCode";
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     public List<Product> getProducts() {
         return productRepository.findAll();
     }
 
     public Product getProductById(Long id) {
-        return productRepository.findById(id).orElseThrow(() -> new ProductNotFoundException());
+        return productRepository.findById(id).orElseThrow(this::productNotFound);
     }
 
+    @Cacheable(PRODUCTS_BY_CODE_CACHE)
     public Product getProductByCode(String code) {
-        return productRepository.findByCode(code).orElseThrow(() -> new ProductNotFoundException());
+        return productRepository.findByCode(code).orElseThrow(this::productNotFound);
+    }
+
+    // resolves all codes with a single query for those not cached yet, unknown codes
+    // are missing in the result
+    public Map<String, Product> getProductsByCodes(Collection<String> codes) {
+        var cache = cacheManager.getCache(PRODUCTS_BY_CODE_CACHE);
+        var products = new HashMap<String, Product>();
+        var uncachedCodes = new ArrayList<String>();
+        for (var code : codes) {
+            var product = cache.get(code, Product.class);
+            if (product != null) {
+                products.put(code, product);
+            } else {
+                uncachedCodes.add(code);
+            }
+        }
+        if (!uncachedCodes.isEmpty()) {
+            for (var product : productRepository.findByCodeIn(uncachedCodes)) {
+                cache.put(product.getCode(), product);
+                products.put(product.getCode(), product);
+            }
+        }
+        return products;
     }
 
+    @CacheEvict(cacheNames = PRODUCTS_BY_CODE_CACHE, key = "#product.code")
     public Product createProduct(Product product) {
         return productRepository.save(product);
     }
 
+    // the code itself may change, so every cached code is dropped
+    @CacheEvict(cacheNames = PRODUCTS_BY_CODE_CACHE, allEntries = true)
     public Product updateProduct(Long id, Product product) {
-        var existingProduct = productRepository.findById(id).orElseThrow(() -> new ProductNotFoundException());
+        var existingProduct = productRepository.findById(id).orElseThrow(this::productNotFound);
         existingProduct.setCode(product.getCode());
         existingProduct.setPrice(product.getPrice());
         return productRepository.save(existingProduct);
     }
 
+    @CacheEvict(cacheNames = PRODUCTS_BY_CODE_CACHE, allEntries = true)
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
     }
+
+    private ProductNotFoundException productNotFound() {
+        meterRegistry.counter("entity.not.found", "entity", "product").increment();
+        return new ProductNotFoundException();
+    }
 }
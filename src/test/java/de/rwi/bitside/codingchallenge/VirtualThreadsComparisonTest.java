@@ -0,0 +1,104 @@
+package de.rwi.bitside.codingchallenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// sends the same burst of concurrent blocking requests to the application once with
+// a small platform thread pool and once with virtual threads, the pool serves as
+// many requests at a time as it has threads, virtual threads serve all of them
+class VirtualThreadsComparisonTest {
+
+    private static final int PLATFORM_THREADS = 10;
+
+    private static final int REQUESTS = 200;
+
+    private static final long BLOCKING_MILLIS = 250;
+
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void shouldServeMoreBlockingRequestsAtOnceOnVirtualThreads() throws Exception {
+        var platformThreads = sendBurst(false);
+        var virtualThreads = sendBurst(true);
+
+        assertThat(platformThreads.failedRequests()).isZero();
+        assertThat(virtualThreads.failedRequests()).isZero();
+        assertThat(platformThreads.maxConcurrentRequests()).isLessThanOrEqualTo(PLATFORM_THREADS);
+        assertThat(virtualThreads.maxConcurrentRequests()).isGreaterThan(PLATFORM_THREADS * 5);
+        // the pool needs at least one round of blocking per thread
+        assertThat(platformThreads.durationMillis())
+                .isGreaterThanOrEqualTo(REQUESTS / PLATFORM_THREADS * BLOCKING_MILLIS);
+        assertThat(virtualThreads.durationMillis()).isLessThan(platformThreads.durationMillis());
+    }
+
+    private Result sendBurst(boolean virtualThreads) throws Exception {
+        try (var context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(
+                CodingchallengeApplication.class, BlockingController.class)
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=" + PLATFORM_THREADS,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID());
+                var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+            var request = HttpRequest
+                    .newBuilder(URI.create("http://localhost:" + context.getWebServer().getPort() + "/blocking"))
+                    .build();
+
+            var start = System.nanoTime();
+            var responses = new ArrayList<Future<Integer>>();
+            try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (var i = 0; i < REQUESTS; i++) {
+                    responses.add(clients.submit(
+                            () -> client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()));
+                }
+            }
+            var durationMillis = (System.nanoTime() - start) / 1_000_000;
+
+            var failedRequests = 0;
+            for (var response : responses) {
+                if (response.get() != 200) {
+                    failedRequests++;
+                }
+            }
+            return new Result(failedRequests, context.getBean(BlockingController.class).maxConcurrentRequests.get(),
+                    durationMillis);
+        }
+    }
+
+    // blocks like a slow database call
+    @RestController
+    static class BlockingController {
+
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+        @GetMapping("/blocking")
+        void block() throws InterruptedException {
+            maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(BLOCKING_MILLIS);
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+    }
+
+    private record Result(int failedRequests, int maxConcurrentRequests, long durationMillis) {
+    }
+}
@@ -0,0 +1,27 @@
+package de.rwi.bitside.codingchallenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+// requests are handled on virtual threads, see VirtualThreadsComparisonTest for the
+// comparison with a platform thread pool
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class VirtualThreadsTest {
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    @Test
+    void shouldHandleRequestsOnVirtualThreads() {
+        var executor = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector().getProtocolHandler()
+                .getExecutor();
+
+        assertThat(executor).isInstanceOf(VirtualThreadExecutor.class);
+    }
+}
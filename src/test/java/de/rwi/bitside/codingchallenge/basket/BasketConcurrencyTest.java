@@ -0,0 +1,87 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.product.ProductService;
+
+// many clients scanning into the same baskets at once must not lose any scan when
+// every change is written to the database right away
+@SpringBootTest(properties = "basket.store.enabled=false")
+class BasketConcurrencyTest {
+
+    private static final int BASKETS = 4;
+
+    private static final int CLIENTS_PER_BASKET = 6;
+
+    private static final int SCANS_PER_CLIENT = 10;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void shouldNotLoseScansWhenClientsScanIntoSameBasketConcurrently() throws Exception {
+        var product = new Product();
+        product.setCode("C0001");
+        product.setPrice(new BigDecimal("1.50"));
+        productService.createProduct(product);
+
+        var basketIds = new ArrayList<Long>();
+        for (var i = 0; i < BASKETS; i++) {
+            basketIds.add(basketService.createBasket(new Basket()).getId());
+        }
+
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<?>>();
+        try (var executor = Executors.newFixedThreadPool(BASKETS * CLIENTS_PER_BASKET)) {
+            for (var basketId : basketIds) {
+                for (var client = 0; client < CLIENTS_PER_BASKET; client++) {
+                    var batchClient = client % 2 == 0;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        for (var scan = 0; scan < SCANS_PER_CLIENT; scan++) {
+                            if (batchClient) {
+                                basketService.addProducts(basketId, List.of(new ScanRequest("C0001", 1)));
+                            } else {
+                                basketService.addProduct(basketId, "C0001");
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+            start.countDown();
+            for (var result : results) {
+                result.get();
+            }
+        }
+
+        for (var basketId : basketIds) {
+            transactionTemplate.executeWithoutResult(status -> {
+                var basket = basketService.getBasketById(basketId);
+                assertThat(basket.getSize()).isEqualTo(CLIENTS_PER_BASKET * SCANS_PER_CLIENT);
+                assertThat(basket.getVersion()).isEqualTo(CLIENTS_PER_BASKET * SCANS_PER_CLIENT);
+            });
+            assertThat(basketService.calculateTotal(basketId))
+                    .isEqualByComparingTo(BigDecimal.valueOf(CLIENTS_PER_BASKET * SCANS_PER_CLIENT * 1.5));
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package de.rwi.bitside.codingchallenge.basket;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
@@ -12,11 +18,13 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +33,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import de.rwi.bitside.codingchallenge.product.Product;
+
 @WebMvcTest(controllers = BasketController.class)
 public class BasketControllerTest {
 
@@ -39,22 +49,96 @@ public class BasketControllerTest {
         var basket1 = createBasket(1L);
         var basket2 = createBasket(2L);
 
-        when(basketService.getBaskets()).thenReturn(List.of(basket1, basket2));
+        when(basketService.getBaskets(BasketSort.ID, null, null, 100)).thenReturn(List.of(basket1, basket2));
 
         mockMvc.perform(get("/api/baskets"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$.[0].id", is(basket1.getId().intValue())))
-                .andExpect(jsonPath("$.[1].id", is(basket2.getId().intValue())));
+                .andExpect(jsonPath("$.[1].id", is(basket2.getId().intValue())))
+                .andExpect(header().doesNotExist("Link"));
 
-        verify(basketService).getBaskets();
+        verify(basketService).getBaskets(BasketSort.ID, null, null, 100);
+    }
+
+    @Test
+    void shouldLinkNextPageWhenPageOfBasketsIsFull() throws Exception {
+        var basket1 = createBasket(1L);
+        var basket2 = createBasket(2L);
+
+        when(basketService.getBaskets(BasketSort.ID, null, 5L, 2)).thenReturn(List.of(basket1, basket2));
+
+        mockMvc.perform(get("/api/baskets?afterId=5&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("Link", "<http://localhost/api/baskets?limit=2&afterId=2>; rel=\"next\""));
+
+        verify(basketService).getBaskets(BasketSort.ID, null, 5L, 2);
+    }
+
+    @Test
+    void shouldLinkNextPageByUpdatedAtWhenPageOfBasketsIsFull() throws Exception {
+        var basket = createBasket(7L);
+        var updatedAfter = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        when(basketService.getBaskets(BasketSort.UPDATED_AT, updatedAfter, 3L, 1)).thenReturn(List.of(basket));
+
+        mockMvc.perform(get("/api/baskets?sort=UPDATED_AT&afterUpdatedAt=2024-01-01T00:00:00&afterId=3&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link",
+                        "<http://localhost/api/baskets?sort=UPDATED_AT&limit=1&afterId=7&afterUpdatedAt=2024-01-02T03:04:05>; rel=\"next\""));
+
+        verify(basketService).getBaskets(BasketSort.UPDATED_AT, updatedAfter, 3L, 1);
+    }
+
+    @Test
+    void shouldStreamBasketsAsNdjsonWhenRequested() throws Exception {
+        var basket1 = createBasket(1L);
+        var basket2 = createBasket(2L);
+
+        doAnswer(invocation -> {
+            Consumer<Basket> consumer = invocation.getArgument(0);
+            consumer.accept(basket1);
+            consumer.accept(basket2);
+            return null;
+        }).when(basketService).streamBaskets(any());
+
+        var result = mockMvc.perform(get("/api/baskets").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(startsWith("{\"id\":1,")))
+                .andExpect(content().string(containsString("\n{\"id\":2,")));
+    }
+
+    @Test
+    void shouldStreamTotalsOfRangeAsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<BasketTotal> consumer = invocation.getArgument(2);
+            consumer.accept(new BasketTotal(1L, new BigDecimal("12.99")));
+            consumer.accept(new BasketTotal(2L, new BigDecimal("3.59")));
+            return null;
+        }).when(basketService).streamTotals(eq(1L), eq(2L), any());
+
+        var result = mockMvc.perform(get("/api/baskets/totals?fromId=1&toId=2").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"basketId\":1,\"total\":12.99}\n{\"basketId\":2,\"total\":3.59}\n"));
     }
 
     @Test
     void shouldShowBasketWhenCorrespondingEndpointIsCalled() throws Exception {
         var basket = createBasket(1L);
 
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0, 0));
         when(basketService.getBasketById(1L)).thenReturn(basket);
 
         mockMvc.perform(get("/api/baskets/1"))
@@ -66,25 +150,111 @@ public class BasketControllerTest {
         verify(basketService).getBasketById(1L);
     }
 
+    @Test
+    void shouldTagBasketWithItsEventSequence() throws Exception {
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0, 3));
+        when(basketService.getBasketById(1L)).thenReturn(createBasket(1L));
+
+        mockMvc.perform(get("/api/baskets/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
+    @Test
+    void shouldTagBasketHeldInMemoryWithItsEpoch() throws Exception {
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0x2a, 3));
+        when(basketService.getBasketById(1L)).thenReturn(createBasket(1L));
+
+        mockMvc.perform(get("/api/baskets/1").header("If-None-Match", "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2a-3\""));
+    }
+
+    @Test
+    void shouldNotLoadBasketWhenItIsNotModified() throws Exception {
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0, 3));
+
+        mockMvc.perform(get("/api/baskets/1").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(basketService, never()).getBasketById(1L);
+    }
+
     @Test
     void shouldReturn404WhenBasketIsNotFound() throws Exception {
-        when(basketService.getBasketById(1L)).thenThrow(new BasketNotFoundException());
+        when(basketService.getVersion(1L)).thenThrow(new BasketNotFoundException());
 
         mockMvc.perform(get("/api/baskets/1"))
                 .andExpect(status().isNotFound());
 
-        verify(basketService).getBasketById(1L);
+        verify(basketService, never()).getBasketById(1L);
+    }
+
+    @Test
+    void shouldListEventsOfBasketWhenCorrespondingEndpointIsCalled() throws Exception {
+        var basket = createBasket(1L);
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+        basket.addProduct(product, 2);
+        basket.removeProduct(product);
+
+        when(basketService.getEvents(1L)).thenReturn(basket.getUnwrittenEvents());
+
+        mockMvc.perform(get("/api/baskets/1/events"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].basketId", is(1)))
+                .andExpect(jsonPath("$.[0].sequenceNumber", is(1)))
+                .andExpect(jsonPath("$.[0].type", is("PRODUCT_ADDED")))
+                .andExpect(jsonPath("$.[0].productCode", is("A0001")))
+                .andExpect(jsonPath("$.[0].quantity", is(2)))
+                .andExpect(jsonPath("$.[0].unitPrice", is(12.99)))
+                .andExpect(jsonPath("$.[1].sequenceNumber", is(2)))
+                .andExpect(jsonPath("$.[1].type", is("PRODUCT_REMOVED")));
     }
 
     @Test
     void shouldCalculateTotalWhenCorrespondingEndpointIsCalled() throws Exception {
-        when(basketService.calculateTotal(1L)).thenReturn(BigDecimal.valueOf(12.99));
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0, 3));
+        when(basketService.calculateTotal(1L, new BasketVersion(0, 3)))
+                .thenReturn(new VersionedTotal(new BasketVersion(0, 3), BigDecimal.valueOf(12.99)));
 
         mockMvc.perform(get("/api/baskets/1/total"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
                 .andExpect(content().string("12.99"));
 
-        verify(basketService).calculateTotal(1L);
+        verify(basketService).calculateTotal(1L, new BasketVersion(0, 3));
+    }
+
+    @Test
+    void shouldNotCalculateTotalWhenBasketIsNotModified() throws Exception {
+        when(basketService.getVersion(1L)).thenReturn(new BasketVersion(0, 3));
+
+        mockMvc.perform(get("/api/baskets/1/total").header("If-None-Match", "\"3\""))
+                .andExpect(status().isNotModified());
+
+        verify(basketService, never()).calculateTotal(1L, new BasketVersion(0, 3));
+    }
+
+    @Test
+    void shouldGetReceiptWhenCorrespondingEndpointIsCalled() throws Exception {
+        var line = new Receipt.Line("A0001", 2, new BigDecimal("12.99"), new BigDecimal("25.98"), null,
+                BigDecimal.ZERO);
+        when(basketService.getReceipt(1L)).thenReturn(new Receipt(List.of(line), new BigDecimal("25.98"),
+                BigDecimal.ZERO, new BigDecimal("25.98")));
+
+        mockMvc.perform(get("/api/baskets/1/receipt"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines", hasSize(1)))
+                .andExpect(jsonPath("$.lines[0].productCode", is("A0001")))
+                .andExpect(jsonPath("$.lines[0].quantity", is(2)))
+                .andExpect(jsonPath("$.lines[0].subtotal", is(25.98)))
+                .andExpect(jsonPath("$.total", is(25.98)));
+
+        verify(basketService).getReceipt(1L);
     }
 
     @Test
@@ -117,6 +287,26 @@ public class BasketControllerTest {
         verify(basketService).addProduct(1L, "A0001");
     }
 
+    @Test
+    void shouldScanProductsInBatchWhenCorrespondingEndpointIsCalled() throws Exception {
+        var scans = List.of(new ScanRequest("A0001", null), new ScanRequest("A0002", 3),
+                new ScanRequest("X0001", null));
+        var result = new ScanResult(4,
+                List.of(new ScanResult.Failure("X0001", ScanResult.Reason.PRODUCT_NOT_FOUND)));
+
+        when(basketService.addProducts(eq(1L), eq(scans))).thenReturn(result);
+
+        mockMvc.perform(post("/api/baskets/1/scan").contentType(MediaType.APPLICATION_JSON)
+                .content("[\"A0001\",{\"code\":\"A0002\",\"quantity\":3},\"X0001\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.scanned", is(4)))
+                .andExpect(jsonPath("$.failures", hasSize(1)))
+                .andExpect(jsonPath("$.failures[0].code", is("X0001")))
+                .andExpect(jsonPath("$.failures[0].reason", is("PRODUCT_NOT_FOUND")));
+
+        verify(basketService).addProducts(eq(1L), eq(scans));
+    }
+
     @Test
     void shouldRemoveProductFromBasketWhenCorrespondingEndpointIsCalled() throws Exception {
         mockMvc.perform(delete("/api/baskets/1/products/1"))
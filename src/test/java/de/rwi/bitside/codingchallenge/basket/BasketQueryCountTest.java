@@ -0,0 +1,269 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountService;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.product.ProductService;
+import jakarta.persistence.EntityManagerFactory;
+
+// the number of SQL statements per read endpoint must not depend on the number of
+// baskets or on the number of items and discounts per basket, baskets are read from
+// the database only
+@SpringBootTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "basket.store.enabled=false" })
+@AutoConfigureMockMvc
+class BasketQueryCountTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountService discountService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void createProductsAndDiscounts() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (!discountService.getDiscounts().isEmpty()) {
+            return;
+        }
+        for (var i = 0; i < 10; i++) {
+            var product = new Product();
+            product.setCode(String.format("Q%04d", i));
+            product.setPrice(new BigDecimal("2.50"));
+            productService.createProduct(product);
+            var discount = new Discount();
+            discount.setProductCode(product.getCode());
+            discount.setType(i % 2 == 0 ? DiscountType.TEN_PERCENT_OFF : DiscountType.BUY_1_GET_1_FREE);
+            discountService.createDiscount(discount);
+        }
+    }
+
+    @Test
+    void shouldListBasketsWithConstantNumberOfStatements() throws Exception {
+        createBaskets(2);
+        var statementsForFewBaskets = countStatements(() -> mockMvc.perform(get("/api/baskets?limit=1000"))
+                .andExpect(status().isOk()));
+
+        createBaskets(20);
+        var statementsForManyBaskets = countStatements(() -> mockMvc.perform(get("/api/baskets?limit=1000"))
+                .andExpect(status().isOk()));
+
+        assertThat(statementsForFewBaskets).isLessThanOrEqualTo(3);
+        assertThat(statementsForManyBaskets).isEqualTo(statementsForFewBaskets);
+    }
+
+    @Test
+    void shouldListBasketsByUpdateTimeWithConstantNumberOfStatements() throws Exception {
+        createBaskets(2);
+        var statementsForFewBaskets = countStatements(
+                () -> mockMvc.perform(get("/api/baskets?sort=UPDATED_AT&limit=1000")).andExpect(status().isOk()));
+
+        createBaskets(20);
+        var statementsForManyBaskets = countStatements(
+                () -> mockMvc.perform(get("/api/baskets?sort=UPDATED_AT&limit=1000")).andExpect(status().isOk()));
+
+        assertThat(statementsForManyBaskets).isEqualTo(statementsForFewBaskets);
+    }
+
+    @Test
+    void shouldStreamBasketsWithConstantNumberOfStatements() throws Exception {
+        createBaskets(2);
+        var statementsForFewBaskets = countStatements(this::streamBaskets);
+
+        createBaskets(20);
+        var statementsForManyBaskets = countStatements(this::streamBaskets);
+
+        assertThat(statementsForFewBaskets).isLessThanOrEqualTo(3);
+        assertThat(statementsForManyBaskets).isEqualTo(statementsForFewBaskets);
+    }
+
+    @Test
+    void shouldShowBasketWithTwoStatementsRegardlessOfItsSize() throws Exception {
+        var smallBasketId = createBasket(1);
+        var largeBasketId = createBasket(10);
+
+        // the version of the basket and the basket
+        var statementsForSmallBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + smallBasketId)).andExpect(status().isOk()));
+        var statementsForLargeBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + largeBasketId)).andExpect(status().isOk()));
+
+        assertThat(statementsForSmallBasket).isEqualTo(2);
+        assertThat(statementsForLargeBasket).isEqualTo(2);
+    }
+
+    @Test
+    void shouldAnswerUnmodifiedBasketWithOneStatement() throws Exception {
+        var basketId = createBasket(10);
+        var eTag = mockMvc.perform(get("/api/baskets/" + basketId)).andReturn().getResponse().getHeader("ETag");
+
+        var statements = countStatements(() -> mockMvc
+                .perform(get("/api/baskets/" + basketId).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified()));
+
+        assertThat(statements).isEqualTo(1);
+    }
+
+    @Test
+    void shouldGetTotalWithTwoStatementsRegardlessOfBasketSize() throws Exception {
+        var smallBasketId = createBasket(1);
+        var largeBasketId = createBasket(10);
+
+        var statementsForSmallBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + smallBasketId + "/total")).andExpect(status().isOk()));
+        var statementsForLargeBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + largeBasketId + "/total")).andExpect(status().isOk()));
+
+        assertThat(statementsForSmallBasket).isEqualTo(2);
+        assertThat(statementsForLargeBasket).isEqualTo(2);
+    }
+
+    @Test
+    void shouldGetTotalOfUnchangedBasketFromCache() throws Exception {
+        var basketId = createBasket(10);
+        mockMvc.perform(get("/api/baskets/" + basketId + "/total")).andExpect(status().isOk());
+
+        // only the version of the basket
+        var statements = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + basketId + "/total")).andExpect(status().isOk()));
+
+        assertThat(statements).isEqualTo(1);
+    }
+
+    @Test
+    void shouldGetReceiptWithOneStatementRegardlessOfBasketSize() throws Exception {
+        var smallBasketId = createBasket(1);
+        var largeBasketId = createBasket(10);
+
+        var statementsForSmallBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + smallBasketId + "/receipt")).andExpect(status().isOk()));
+        var statementsForLargeBasket = countStatements(
+                () -> mockMvc.perform(get("/api/baskets/" + largeBasketId + "/receipt")).andExpect(status().isOk()));
+
+        assertThat(statementsForSmallBasket).isEqualTo(1);
+        assertThat(statementsForLargeBasket).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStreamTotalsWithConstantNumberOfStatements() throws Exception {
+        var firstBasketId = createBasket(1);
+        createBaskets(2);
+        var statementsForFewBaskets = countStatements(() -> streamTotals(firstBasketId));
+
+        createBaskets(20);
+        var statementsForManyBaskets = countStatements(() -> streamTotals(firstBasketId));
+
+        assertThat(statementsForFewBaskets).isLessThanOrEqualTo(3);
+        assertThat(statementsForManyBaskets).isEqualTo(statementsForFewBaskets);
+    }
+
+    @Test
+    void shouldStreamSameTotalsAsSingleBasketReads() {
+        var basketIds = List.of(createBasket(3), createBasket(10), createBasket(1));
+        var totals = new ArrayList<BasketTotal>();
+
+        basketService.streamTotals(basketIds, totals::add);
+
+        assertThat(totals).extracting(BasketTotal::basketId).containsExactly(basketIds.get(0), basketIds.get(1),
+                basketIds.get(2));
+        for (var total : totals) {
+            assertThat(total.total()).isEqualTo(basketService.calculateTotal(total.basketId()));
+        }
+    }
+
+    @Test
+    void shouldPriceBasketWithScannedPricesWithoutReadingProducts() throws Exception {
+        var product = new Product();
+        product.setCode("P0001");
+        product.setPrice(new BigDecimal("4.00"));
+        var productId = productService.createProduct(product).getId();
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "P0001");
+        basketService.addProduct(basketId, "P0001");
+
+        // the price changes in the middle of the checkout
+        product.setPrice(new BigDecimal("5.00"));
+        productService.updateProduct(productId, product);
+        statistics.clear();
+
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(new BigDecimal("8.00"));
+        assertThat(basketService.getReceipt(basketId).total()).isEqualTo(new BigDecimal("8.00"));
+        assertThat(statistics.getEntityStatistics(Product.class.getName()).getLoadCount()).isZero();
+
+        // a line keeps the price it was first scanned at
+        basketService.addProduct(basketId, "P0001");
+
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(new BigDecimal("12.00"));
+    }
+
+    private void streamTotals(Long fromId) throws Exception {
+        var result = mockMvc.perform(get("/api/baskets/totals?fromId=" + fromId + "&toId=" + Long.MAX_VALUE)
+                .accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+    }
+
+    private void streamBaskets() throws Exception {
+        var result = mockMvc.perform(get("/api/baskets").accept(MediaType.APPLICATION_NDJSON)).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+    }
+
+    private void createBaskets(int count) {
+        for (var i = 0; i < count; i++) {
+            createBasket(1 + i % 10);
+        }
+    }
+
+    // creates a basket with the given number of distinct products, each with a discount
+    private Long createBasket(int distinctProducts) {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        var discounts = discountService.getDiscounts();
+        for (var i = 0; i < distinctProducts; i++) {
+            basketService.addProduct(basketId, discounts.get(i).getProductCode());
+            basketService.addDiscount(basketId, discounts.get(i).getId());
+        }
+        return basketId;
+    }
+
+    private long countStatements(Request request) throws Exception {
+        statistics.clear();
+        request.perform();
+        return statistics.getPrepareStatementCount();
+    }
+
+    @FunctionalInterface
+    private interface Request {
+
+        void perform() throws Exception;
+    }
+}
@@ -4,16 +4,26 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
 
 import de.rwi.bitside.codingchallenge.discount.Discount;
 import de.rwi.bitside.codingchallenge.discount.DiscountService;
 import de.rwi.bitside.codingchallenge.discount.DiscountType;
 import de.rwi.bitside.codingchallenge.product.Product;
 import de.rwi.bitside.codingchallenge.product.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -21,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,6 +46,18 @@ class BasketServiceTest {
     @Mock
     private DiscountService discountService;
 
+    @Mock
+    private BasketEventLog basketEventLog;
+
+    @Spy
+    private PricingEngine pricingEngine;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private TransactionOperations transactionOperations = TransactionOperations.withoutTransaction();
+
     @InjectMocks
     private BasketService basketService;
 
@@ -320,10 +343,241 @@ class BasketServiceTest {
         assertThat(total).isEqualTo(BigDecimal.valueOf(41.35));
     }
 
+    @Test
+    void shouldKeepOneLineItemPerProductCodeWhenSameProductIsScannedRepeatedly() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var basket = createBasket(Collections.emptyList(), Collections.emptySet());
+
+        given(productService.getProductByCode("A0001")).willReturn(product);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        basketService.addProduct(basketId, "A0001");
+        basketService.addProduct(basketId, "A0001");
+        basketService.addProduct(basketId, "A0001");
+
+        assertThat(basket.getItems()).hasSize(1);
+        assertThat(basket.getItem("A0001").getQuantity()).isEqualTo(3);
+        assertThat(basket.getItem("A0001").getUnitPrice()).isEqualTo(BigDecimal.valueOf(12.99));
+    }
+
+    @Test
+    void shouldDecreaseQuantityAndDropLineItemWhenProductIsRemoved() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var basket = createBasket(new ArrayList<>(Arrays.asList(product, product)), Collections.emptySet());
+
+        given(productService.getProductById(1L)).willReturn(product);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        basketService.removeProduct(basketId, 1L);
+
+        assertThat(basket.getItem("A0001").getQuantity()).isEqualTo(1);
+
+        basketService.removeProduct(basketId, 1L);
+
+        assertThat(basket.getItems()).isEmpty();
+    }
+
+    @Test
+    void shouldKeepRunningTotalInSyncWhenProductsAndDiscountsAreAddedAndRemoved() {
+        var product = new Product();
+        product.setCode("A0002");
+        product.setPrice(BigDecimal.valueOf(3.99));
+
+        var discount = new Discount();
+        discount.setType(DiscountType.BUY_1_GET_1_FREE);
+        discount.setProductCode("A0002");
+
+        var basket = createBasket(Collections.emptyList(), Collections.emptySet());
+        ReflectionTestUtils.setField(basketService, "totalConsistencyCheck", true);
+
+        given(productService.getProductByCode("A0002")).willReturn(product);
+        given(productService.getProductById(2L)).willReturn(product);
+        given(discountService.getDiscountById(1L)).willReturn(discount);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        basketService.addProduct(basketId, "A0002");
+        basketService.addProduct(basketId, "A0002");
+        basketService.addProduct(basketId, "A0002");
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(BigDecimal.valueOf(11.97));
+
+        basketService.addDiscount(basketId, 1L);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(BigDecimal.valueOf(7.98));
+
+        basketService.removeProduct(basketId, 2L);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(BigDecimal.valueOf(3.99));
+
+        basketService.removeDiscount(basketId, 1L);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(BigDecimal.valueOf(7.98));
+    }
+
+    @Test
+    void shouldFailConsistencyCheckWhenRunningTotalDiffersFromRecalculatedTotal() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var basket = createBasket(new ArrayList<>(Arrays.asList(product)), Collections.emptySet());
+        basket.getItem("A0001").setQuantity(2);
+        ReflectionTestUtils.setField(basketService, "totalConsistencyCheck", true);
+
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        assertThatThrownBy(() -> basketService.calculateTotal(basketId)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void shouldAddAllScannedProductsAndReportFailuresPerCodeWhenScanningInBatch() {
+        var product1 = new Product();
+        product1.setCode("A0001");
+        product1.setPrice(BigDecimal.valueOf(12.99));
+        var product2 = new Product();
+        product2.setCode("A0002");
+        product2.setPrice(BigDecimal.valueOf(3.99));
+
+        var basket = createBasket(Collections.emptyList(), Collections.emptySet());
+
+        given(productService.getProductsByCodes(Set.of("A0001", "A0002", "X0001")))
+                .willReturn(Map.of("A0001", product1, "A0002", product2));
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        var result = basketService.addProducts(basketId, List.of(new ScanRequest("A0001", null),
+                new ScanRequest("A0002", 3), new ScanRequest("X0001", null), new ScanRequest("A0001", 0),
+                new ScanRequest("A0001", null)));
+
+        assertThat(result.scanned()).isEqualTo(5);
+        assertThat(result.failures()).containsExactly(
+                new ScanResult.Failure("X0001", ScanResult.Reason.PRODUCT_NOT_FOUND),
+                new ScanResult.Failure("A0001", ScanResult.Reason.INVALID_QUANTITY));
+        assertThat(basket.getItem("A0001").getQuantity()).isEqualTo(2);
+        assertThat(basket.getItem("A0002").getQuantity()).isEqualTo(3);
+        assertThat(basket.getTotal()).isEqualTo(BigDecimal.valueOf(37.95));
+        verify(basketRepository, times(1)).save(basket);
+    }
+
+    @Test
+    void shouldReportMissingScansAndQuantitiesBeyondLimitsAsFailures() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(0.01));
+
+        var basket = createBasket(Collections.emptyList(), Collections.emptySet());
+        basket.addProduct(product, Integer.MAX_VALUE - 5);
+
+        given(productService.getProductsByCodes(Set.of("A0001"))).willReturn(Map.of("A0001", product));
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        var scans = new ArrayList<ScanRequest>();
+        scans.add(null);
+        scans.add(new ScanRequest("A0001", ScanRequest.MAX_QUANTITY + 1));
+        scans.add(new ScanRequest("A0001", 5));
+        scans.add(new ScanRequest("A0001", 1));
+        var result = basketService.addProducts(basketId, scans);
+
+        assertThat(result.scanned()).isEqualTo(5);
+        assertThat(result.failures()).containsExactly(
+                new ScanResult.Failure(null, ScanResult.Reason.PRODUCT_NOT_FOUND),
+                new ScanResult.Failure("A0001", ScanResult.Reason.INVALID_QUANTITY),
+                new ScanResult.Failure("A0001", ScanResult.Reason.INVALID_QUANTITY));
+        assertThat(basket.getItem("A0001").getQuantity()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void shouldCountNotFoundBasketWhenBasketDoesNotExist() {
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.empty());
+
+        assertThatThrownBy(() -> basketService.getBasketById(basketId)).isInstanceOf(BasketNotFoundException.class);
+
+        assertThat(meterRegistry.counter("entity.not.found", "entity", "basket").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordBasketSizeWhenProductIsScanned() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var basket = createBasket(new ArrayList<>(Arrays.asList(product)), Collections.emptySet());
+
+        given(productService.getProductByCode("A0001")).willReturn(product);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(basket));
+
+        basketService.addProduct(basketId, "A0001");
+
+        assertThat(meterRegistry.summary("basket.size").count()).isEqualTo(1);
+        assertThat(meterRegistry.summary("basket.size").max()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldApplyScanAgainToReloadedBasketWhenBasketWasChangedConcurrently() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var staleBasket = createBasket(Collections.emptyList(), Collections.emptySet());
+        var reloadedBasket = createBasket(new ArrayList<>(Arrays.asList(product)), Collections.emptySet());
+
+        given(productService.getProductByCode("A0001")).willReturn(product);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(staleBasket),
+                java.util.Optional.of(reloadedBasket));
+        given(basketRepository.save(staleBasket))
+                .willThrow(new ObjectOptimisticLockingFailureException(Basket.class, basketId));
+
+        basketService.addProduct(basketId, "A0001");
+
+        assertThat(reloadedBasket.getItem("A0001").getQuantity()).isEqualTo(2);
+        verify(basketRepository, times(1)).save(reloadedBasket);
+        assertThat(meterRegistry.counter("basket.update.conflicts").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordBasketSizeOnceWhenBatchOfScansIsAppliedAgain() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        var staleBasket = createBasket(Collections.emptyList(), Collections.emptySet());
+        var reloadedBasket = createBasket(new ArrayList<>(Arrays.asList(product)), Collections.emptySet());
+
+        given(productService.getProductsByCodes(Set.of("A0001"))).willReturn(Map.of("A0001", product));
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willReturn(java.util.Optional.of(staleBasket),
+                java.util.Optional.of(reloadedBasket));
+        given(basketRepository.save(staleBasket))
+                .willThrow(new ObjectOptimisticLockingFailureException(Basket.class, basketId));
+
+        var result = basketService.addProducts(basketId, List.of(new ScanRequest("A0001", 2)));
+
+        assertThat(result.scanned()).isEqualTo(2);
+        assertThat(meterRegistry.summary("basket.size").count()).isEqualTo(1);
+        assertThat(meterRegistry.summary("basket.size").totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldGiveUpWhenBasketKeepsBeingChangedConcurrently() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(BigDecimal.valueOf(12.99));
+
+        given(productService.getProductByCode("A0001")).willReturn(product);
+        given(basketRepository.findWithItemsAndDiscountsById(basketId)).willAnswer(invocation -> java.util.Optional.of(new Basket()));
+        given(basketRepository.save(any(Basket.class)))
+                .willThrow(new ObjectOptimisticLockingFailureException(Basket.class, basketId));
+
+        assertThatThrownBy(() -> basketService.addProduct(basketId, "A0001"))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        verify(basketRepository, times(BasketService.MAX_UPDATE_ATTEMPTS)).findWithItemsAndDiscountsById(basketId);
+    }
+
     private Basket createBasket(List<Product> products, Set<Discount> discounts) {
         var basket = new Basket();
-        basket.setProducts(products);
-        basket.setDiscounts(discounts);
+        products.forEach(basket::addProduct);
+        discounts.forEach(basket::addDiscount);
         return basket;
     }
 }
@@ -0,0 +1,370 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountInUseException;
+import de.rwi.bitside.codingchallenge.discount.DiscountService;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.product.ProductService;
+
+// the scheduled flush is pushed out of the way, the tests flush themselves
+@SpringBootTest(properties = { "basket.store.enabled=true", "basket.store.flush-interval=PT1H",
+        "basket.store.max-dirty-age=PT1H", "basket.events.snapshot-interval=3" })
+class BasketStoreTest {
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private BasketStore basketStore;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private BasketEventLog basketEventLog;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountService discountService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void createProduct() {
+        if (productService.getProducts().isEmpty()) {
+            var product = new Product();
+            product.setCode("S0001");
+            product.setPrice(new BigDecimal("1.50"));
+            productService.createProduct(product);
+        }
+    }
+
+    @Test
+    void shouldKeepScansInMemoryUntilBasketIsFlushed() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+
+        for (var i = 0; i < 3; i++) {
+            basketService.addProduct(basketId, "S0001");
+        }
+
+        assertThat(basketService.getBasketById(basketId).getSize()).isEqualTo(3);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(new BigDecimal("4.50"));
+        assertThat(persistedSize(basketId)).isZero();
+
+        basketStore.drain();
+
+        assertThat(persistedSize(basketId)).isEqualTo(3);
+        assertThat(persistedBasket(basketId).getTotal()).isEqualTo(new BigDecimal("4.50"));
+        assertThat(persistedBasket(basketId).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFlushOnlyBasketsWithChangesOlderThanMaxDirtyAge() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+
+        basketStore.flush();
+
+        assertThat(basketEventLog.getEvents(basketId, 0)).isEmpty();
+
+        basketStore.flush(Duration.ZERO, false);
+
+        assertThat(basketEventLog.getEvents(basketId, 0)).hasSize(1);
+    }
+
+    @Test
+    void shouldWriteBasketAsWholeOnlyEverySnapshotIntervalEvents() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addProduct(basketId, "S0001");
+        basketStore.flush(Duration.ZERO, false);
+
+        assertThat(basketEventLog.getEvents(basketId, 0)).hasSize(2);
+        assertThat(persistedSize(basketId)).isZero();
+
+        basketService.addProduct(basketId, "S0001");
+        basketStore.flush(Duration.ZERO, false);
+
+        assertThat(basketEventLog.getEvents(basketId, 0)).hasSize(3);
+        assertThat(persistedSize(basketId)).isEqualTo(3);
+        assertThat(persistedBasket(basketId).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReplayEventsAfterSnapshotWhenBasketIsLoadedAgain() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        for (var i = 0; i < 3; i++) {
+            basketService.addProduct(basketId, "S0001");
+        }
+        basketStore.flush(Duration.ZERO, false);
+        basketService.addProduct(basketId, "S0001");
+        basketStore.flush(Duration.ZERO, false);
+        // lost from memory like after a crash, the snapshot has 3 of 4 scans
+        basketStore.remove(basketId);
+
+        assertThat(persistedSize(basketId)).isEqualTo(3);
+
+        basketService.addProduct(basketId, "S0001");
+
+        assertThat(basketService.getBasketById(basketId).getSize()).isEqualTo(5);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(new BigDecimal("7.50"));
+        assertThat(basketService.getEvents(basketId)).extracting(BasketEvent::getSequenceNumber)
+                .containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void shouldCountEventsAfterSnapshotInEventSequence() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addProduct(basketId, "S0001");
+
+        assertThat(basketService.getVersion(basketId).eventSequence()).isEqualTo(2);
+
+        basketStore.flush(Duration.ZERO, false);
+        basketStore.remove(basketId);
+
+        assertThat(persistedSize(basketId)).isZero();
+        assertThat(basketService.getVersion(basketId)).isEqualTo(new BasketVersion(0, 2));
+    }
+
+    @Test
+    void shouldNotRepeatVersionWhenUnwrittenEventsAreLost() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProducts(basketId, List.of(new ScanRequest("S0001", 2)));
+        var version = basketService.getVersion(basketId);
+        assertThat(basketService.calculateTotal(basketId, version).total()).isEqualTo(new BigDecimal("3.00"));
+
+        // lost from memory before it was written like after a crash, the next change
+        // takes the same event sequence
+        basketStore.remove(basketId);
+        basketService.addProduct(basketId, "S0001");
+        var newVersion = basketService.getVersion(basketId);
+
+        assertThat(newVersion.eventSequence()).isEqualTo(version.eventSequence());
+        assertThat(newVersion.tag()).isNotEqualTo(version.tag());
+        assertThat(basketService.calculateTotal(basketId, newVersion).total()).isEqualTo(new BigDecimal("1.50"));
+    }
+
+    @Test
+    void shouldNotCacheTotalUnderVersionReadBeforeConcurrentScan() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        var version = basketService.getVersion(basketId);
+
+        // scanned between reading the version and calculating the total
+        basketService.addProduct(basketId, "S0001");
+        var total = basketService.calculateTotal(basketId, version);
+
+        assertThat(total.version()).isEqualTo(basketService.getVersion(basketId)).isNotEqualTo(version);
+        assertThat(total.total()).isEqualTo(new BigDecimal("3.00"));
+        assertThat(cacheManager.getCache(BasketService.BASKET_TOTALS_CACHE).get(basketId + ":" + version.tag()))
+                .isNull();
+
+        var currentTotal = basketService.calculateTotal(basketId, total.version());
+
+        assertThat(currentTotal).isEqualTo(total);
+        assertThat(cacheManager.getCache(BasketService.BASKET_TOTALS_CACHE)
+                .get(basketId + ":" + total.version().tag())).isNotNull();
+    }
+
+    @Test
+    void shouldKeepWritingBasketAfterItWasFlushed() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addProduct(basketId, "S0001");
+        basketStore.drain();
+
+        var productId = productService.getProductByCode("S0001").getId();
+        basketService.removeProduct(basketId, productId);
+        basketStore.drain();
+
+        assertThat(persistedSize(basketId)).isEqualTo(1);
+
+        basketService.removeProduct(basketId, productId);
+        basketService.addProduct(basketId, "S0001");
+        basketService.addProduct(basketId, "S0001");
+        basketStore.drain();
+
+        assertThat(persistedSize(basketId)).isEqualTo(2);
+        assertThat(persistedBasket(basketId).getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldNotWriteBasketAgainWhenItWasDeleted() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+
+        basketService.deleteBasket(basketId);
+        basketStore.drain();
+
+        assertThat(basketRepository.existsById(basketId)).isFalse();
+    }
+
+    @Test
+    void shouldDeleteEventsOfDeletedBasket() {
+        var discountId = createDiscount();
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addDiscount(basketId, discountId);
+        basketStore.flush(Duration.ZERO, false);
+
+        assertThat(basketEventLog.getEvents(basketId, 0)).hasSize(2);
+
+        basketService.deleteBasket(basketId);
+
+        assertThat(basketRepository.existsById(basketId)).isFalse();
+        assertThat(basketEventLog.getEvents(basketId, 0)).isEmpty();
+        discountService.deleteDiscount(discountId);
+    }
+
+    @Test
+    void shouldNotLoseScansWhenClientsScanWhileBasketsAreFlushed() throws Exception {
+        var basketIds = new ArrayList<Long>();
+        for (var i = 0; i < 4; i++) {
+            basketIds.add(basketService.createBasket(new Basket()).getId());
+        }
+
+        var start = new CountDownLatch(1);
+        var scanning = new AtomicBoolean(true);
+        var results = new ArrayList<Future<?>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var flusher = executor.submit(() -> {
+                start.await();
+                while (scanning.get()) {
+                    basketStore.flush(Duration.ZERO, false);
+                    Thread.sleep(1);
+                }
+                return null;
+            });
+            for (var basketId : basketIds) {
+                for (var client = 0; client < 8; client++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        for (var scan = 0; scan < 50; scan++) {
+                            basketService.addProducts(basketId, List.of(new ScanRequest("S0001", 1)));
+                        }
+                        return null;
+                    }));
+                }
+            }
+            start.countDown();
+            for (var result : results) {
+                result.get();
+            }
+            scanning.set(false);
+            flusher.get();
+        }
+        basketStore.drain();
+
+        for (var basketId : basketIds) {
+            assertThat(persistedSize(basketId)).isEqualTo(400);
+            assertThat(basketService.getBasketById(basketId).getSize()).isEqualTo(400);
+        }
+    }
+
+    @Test
+    void shouldRejectChangeOfDiscountAppliedToBasket() {
+        var discount = new Discount();
+        discount.setType(DiscountType.TEN_PERCENT_OFF);
+        discount.setProductCode("S0001");
+        var discountId = discountService.createDiscount(discount).getId();
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addDiscount(basketId, discountId);
+        var changedDiscount = new Discount();
+        changedDiscount.setType(DiscountType.BUY_1_GET_1_FREE);
+        changedDiscount.setProductCode("S0001");
+
+        // held in memory only
+        assertThatThrownBy(() -> discountService.updateDiscount(discountId, changedDiscount))
+                .isInstanceOf(DiscountInUseException.class);
+
+        basketStore.drain();
+        basketStore.remove(basketId);
+
+        // held in the database only
+        assertThatThrownBy(() -> discountService.updateDiscount(discountId, changedDiscount))
+                .isInstanceOf(DiscountInUseException.class);
+        assertThat(basketService.calculateTotal(basketId)).isEqualTo(new BigDecimal("1.35"));
+
+        basketService.deleteBasket(basketId);
+        discountService.updateDiscount(discountId, changedDiscount);
+
+        assertThat(discountService.getDiscountById(discountId).getType()).isEqualTo(DiscountType.BUY_1_GET_1_FREE);
+    }
+
+    @Test
+    void shouldRejectDeletionOfDiscountHeldByBasketInMemory() {
+        var discountId = createDiscount();
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addDiscount(basketId, discountId);
+
+        assertThatThrownBy(() -> discountService.deleteDiscount(discountId))
+                .isInstanceOf(DiscountInUseException.class);
+
+        basketStore.drain();
+
+        assertThat(persistedBasket(basketId).getDiscounts()).extracting(Discount::getId).containsExactly(discountId);
+    }
+
+    @Test
+    void shouldDropChangesRejectedByDatabaseInsteadOfWritingThemAgain() {
+        var discountId = createDiscount();
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "S0001");
+        basketService.addDiscount(basketId, discountId);
+        // gone behind the back of the store
+        jdbcTemplate.update("DELETE FROM discounts WHERE id = ?", discountId);
+
+        basketStore.drain();
+
+        assertThat(basketStore.read(basketId, basket -> true)).isEmpty();
+        assertThat(basketEventLog.getEvents(basketId, 0)).isEmpty();
+        assertThat(persistedSize(basketId)).isZero();
+    }
+
+    private Long createDiscount() {
+        var discount = new Discount();
+        discount.setType(DiscountType.TEN_PERCENT_OFF);
+        discount.setProductCode("S0001");
+        return discountService.createDiscount(discount).getId();
+    }
+
+    private int persistedSize(Long basketId) {
+        return transactionTemplate.execute(status -> basketRepository.findById(basketId).orElseThrow().getSize());
+    }
+
+    private Basket persistedBasket(Long basketId) {
+        return transactionTemplate.execute(status -> basketRepository.findById(basketId).orElseThrow().copy());
+    }
+}
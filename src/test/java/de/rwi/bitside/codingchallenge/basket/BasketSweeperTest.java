@@ -0,0 +1,144 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountService;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.product.ProductService;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// the scheduled flush and sweep are pushed out of the way, the tests sweep
+// themselves in batches of two baskets
+@SpringBootTest(properties = { "basket.store.enabled=true", "basket.store.flush-interval=PT1H",
+        "basket.store.max-dirty-age=PT1H", "basket.expiry.sweep-interval=PT1H", "basket.expiry.batch-size=2" })
+class BasketSweeperTest {
+
+    @Autowired
+    private BasketSweeper basketSweeper;
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private BasketStore basketStore;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DiscountService discountService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Discount discount;
+
+    @BeforeEach
+    void createProductAndDiscount() {
+        if (productService.getProducts().isEmpty()) {
+            var product = new Product();
+            product.setCode("E0001");
+            product.setPrice(new BigDecimal("1.50"));
+            productService.createProduct(product);
+            discount = new Discount();
+            discount.setProductCode("E0001");
+            discount.setType(DiscountType.TEN_PERCENT_OFF);
+            discountService.createDiscount(discount);
+        }
+        discount = discountService.getDiscounts().getFirst();
+    }
+
+    @Test
+    void shouldDeleteExpiredBasketsWithTheirItemsDiscountsAndEvents() {
+        var expiredIds = new ArrayList<Long>();
+        for (var i = 0; i < 5; i++) {
+            expiredIds.add(createWrittenBasket());
+        }
+        var updatedBefore = LocalDateTime.now().plusSeconds(1);
+        var evictedBefore = meterRegistry.counter("basket.expiry.evicted").count();
+
+        var evicted = basketSweeper.sweep(updatedBefore);
+
+        assertThat(evicted).isGreaterThanOrEqualTo(5);
+        assertThat(meterRegistry.counter("basket.expiry.evicted").count() - evictedBefore).isEqualTo(evicted);
+        for (var basketId : expiredIds) {
+            assertThat(basketRepository.existsById(basketId)).isFalse();
+            assertThat(countRows("basket_items", basketId)).isZero();
+            assertThat(countRows("baskets_discounts", basketId)).isZero();
+            assertThat(countRows("basket_events", basketId)).isZero();
+        }
+    }
+
+    @Test
+    void shouldKeepBasketsChangedAfterTimeToLive() {
+        var updatedBefore = LocalDateTime.now().minusSeconds(1);
+        var basketId = createWrittenBasket();
+
+        basketSweeper.sweep(updatedBefore);
+
+        assertThat(basketRepository.existsById(basketId)).isTrue();
+        assertThat(countRows("basket_items", basketId)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepBasketsHeldInMemory() {
+        var basketId = createWrittenBasket();
+        basketService.addProduct(basketId, "E0001");
+
+        basketSweeper.sweep(LocalDateTime.now().plusSeconds(1));
+
+        assertThat(basketRepository.existsById(basketId)).isTrue();
+        assertThat(basketService.getBasketById(basketId).getSize()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldKeepBasketsWithEventsWrittenAfterTimeToLive() {
+        var basketId = createWrittenBasket();
+        basketService.addProduct(basketId, "E0001");
+        // the event is written, the snapshot is not
+        basketStore.flush(Duration.ZERO, false);
+        basketStore.remove(basketId);
+        var updatedBefore = LocalDateTime.now().minusSeconds(1);
+        jdbcTemplate.update("UPDATE baskets SET updated_at = ? WHERE id = ?", updatedBefore.minusDays(1), basketId);
+
+        basketSweeper.sweep(updatedBefore);
+
+        assertThat(basketRepository.existsById(basketId)).isTrue();
+        assertThat(countRows("basket_events", basketId)).isEqualTo(3);
+    }
+
+    // a basket with an item, a discount and events written to the database and no
+    // longer held in memory
+    private Long createWrittenBasket() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        basketService.addProduct(basketId, "E0001");
+        basketService.addDiscount(basketId, discount.getId());
+        basketStore.drain();
+        basketStore.remove(basketId);
+        return basketId;
+    }
+
+    private int countRows(String table, Long basketId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table + " WHERE basket_id = ?", Integer.class,
+                basketId);
+    }
+}
@@ -0,0 +1,166 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.rwi.bitside.codingchallenge.product.Product;
+import de.rwi.bitside.codingchallenge.product.ProductService;
+
+// the scheduled flush is pushed out of the way, the tests flush themselves, small
+// segments make the log roll over
+@SpringBootTest(properties = { "basket.store.enabled=true", "basket.store.flush-interval=PT1H",
+        "basket.store.max-dirty-age=PT1H", "basket.wal.enabled=true", "basket.wal.segment-records=4" })
+class BasketWalTest {
+
+    @TempDir
+    static Path walDirectory;
+
+    @DynamicPropertySource
+    static void walProperties(DynamicPropertyRegistry registry) {
+        registry.add("basket.wal.directory", () -> walDirectory.toString());
+    }
+
+    @Autowired
+    private BasketService basketService;
+
+    @Autowired
+    private BasketStore basketStore;
+
+    @Autowired
+    private BasketWal basketWal;
+
+    @Autowired
+    private BasketRepository basketRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Value("${basket.wal.segment-records}")
+    private int segmentRecords;
+
+    @BeforeEach
+    void createProduct() {
+        if (productService.getProducts().isEmpty()) {
+            var product = new Product();
+            product.setCode("S0001");
+            product.setPrice(new BigDecimal("1.50"));
+            productService.createProduct(product);
+        }
+    }
+
+    @Test
+    void shouldRecoverScansNotWrittenBeforeCrash(@TempDir Path crashDirectory) throws IOException {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        for (var i = 0; i < 3; i++) {
+            basketService.addProduct(basketId, "S0001");
+        }
+        // the log as left on disk by a crash, the scans never reached the database
+        try (var files = Files.list(walDirectory)) {
+            for (var file : files.toList()) {
+                Files.copy(file, crashDirectory.resolve(file.getFileName()));
+            }
+        }
+        assertThat(persistedSize(basketId)).isZero();
+
+        var restartedStore = restart(crashDirectory);
+
+        assertThat(restartedStore.read(basketId, Basket::getSize)).contains(3);
+
+        restartedStore.drain();
+        basketStore.remove(basketId);
+
+        assertThat(persistedSize(basketId)).isEqualTo(3);
+        assertThat(basketService.getEvents(basketId)).extracting(BasketEvent::getSequenceNumber)
+                .containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void shouldDeleteSegmentsOnceTheirEventsAreWritten() {
+        var basketId = basketService.createBasket(new Basket()).getId();
+        for (var i = 0; i < 3 * segmentRecords; i++) {
+            basketService.addProduct(basketId, "S0001");
+        }
+
+        assertThat(basketWal.getSegmentCount()).isGreaterThanOrEqualTo(3);
+
+        basketStore.drain();
+        basketWal.sync();
+
+        assertThat(basketWal.getSegmentCount()).isEqualTo(1);
+        assertThat(persistedSize(basketId)).isEqualTo(3 * segmentRecords);
+    }
+
+    @Test
+    void shouldStopRecoveryAtTornRecord(@TempDir Path directory) throws IOException {
+        var wal = open(directory);
+        for (var sequenceNumber = 1; sequenceNumber <= 3; sequenceNumber++) {
+            var event = BasketEvent.productAdded("S0001", 150, sequenceNumber);
+            event.setBasketId(42L);
+            event.setSequenceNumber(sequenceNumber);
+            wal.append(event);
+        }
+        wal.sync();
+        try (var files = Files.list(directory); var file = new RandomAccessFile(files.findFirst().orElseThrow()
+                .toFile(), "rw")) {
+            // the last record was only partly written
+            file.seek(2 * BasketWal.RECORD_SIZE + 20);
+            file.writeByte(0xff);
+        }
+
+        var events = open(directory).recover();
+
+        assertThat(events).extracting(BasketEvent::getSequenceNumber).containsExactly(1L, 2L);
+        assertThat(events).allSatisfy(event -> {
+            assertThat(event.getBasketId()).isEqualTo(42L);
+            assertThat(event.getType()).isEqualTo(BasketEventType.PRODUCT_ADDED);
+            assertThat(event.getProductCode()).isEqualTo("S0001");
+            assertThat(event.getUnitPriceCents()).isEqualTo(150);
+            assertThat(event.getQuantity()).isEqualTo((int) event.getSequenceNumber());
+        });
+    }
+
+    // a store and log started over the directory like after a restart
+    private BasketStore restart(Path directory) throws IOException {
+        var store = new BasketStore();
+        beanFactory.autowireBean(store);
+        ReflectionTestUtils.setField(store, "basketWal", open(directory));
+        store.recover();
+        return store;
+    }
+
+    private BasketWal open(Path directory) throws IOException {
+        var wal = new BasketWal();
+        beanFactory.autowireBean(wal);
+        ReflectionTestUtils.setField(wal, "directory", directory);
+        ReflectionTestUtils.setField(wal, "waitForSync", false);
+        wal.open();
+        return wal;
+    }
+
+    private int persistedSize(Long basketId) {
+        return transactionTemplate.execute(status -> basketRepository.findById(basketId).orElseThrow().getSize());
+    }
+}
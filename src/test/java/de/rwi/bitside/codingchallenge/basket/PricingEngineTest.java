@@ -0,0 +1,116 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+class PricingEngineTest {
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    @Test
+    void shouldApplyDiscountOnlyToProductsWithMatchingCode() {
+        var basket = new Basket();
+        addProducts(basket, "A0001", "12.99", 2);
+        addProducts(basket, "A0002", "3.99", 3);
+        addProducts(basket, "A0003", "9.99", 1);
+        basket.addDiscount(createDiscount(DiscountType.TEN_PERCENT_OFF, "A0001"));
+        basket.addDiscount(createDiscount(DiscountType.BUY_1_GET_1_FREE, "A0002"));
+
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("41.35"));
+    }
+
+    @Test
+    void shouldApplyDiscountInFavourOfCustomerWhenSeveralDiscountsMatchTheSameCode() {
+        var basket = new Basket();
+        addProducts(basket, "A0002", "3.99", 1);
+        basket.addDiscount(createDiscount(DiscountType.BUY_1_GET_1_FREE, "A0002"));
+        basket.addDiscount(createDiscount(DiscountType.TEN_PERCENT_OFF, "A0002"));
+
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("3.59"));
+
+        addProducts(basket, "A0002", "3.99", 1);
+
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("3.99"));
+    }
+
+    @Test
+    void shouldNotModifyBasketWhenCalculatingTotal() {
+        var basket = new Basket();
+        addProducts(basket, "A0001", "12.99", 2);
+        basket.addDiscount(createDiscount(DiscountType.TEN_PERCENT_OFF, "A0001"));
+
+        pricingEngine.calculateTotal(basket);
+
+        assertThat(basket.getItems()).hasSize(1);
+        assertThat(basket.getItem("A0001").getQuantity()).isEqualTo(2);
+        assertThat(basket.getDiscounts()).hasSize(1);
+    }
+
+    @Test
+    void shouldApplyMultiBuyAndAmountOffDiscounts() {
+        var basket = new Basket();
+        addProducts(basket, "A0002", "3.99", 7);
+        addProducts(basket, "A0001", "12.99", 2);
+        addProducts(basket, "A0003", "0.30", 1);
+        basket.addDiscount(createDiscount(DiscountType.THREE_FOR_TWO, "A0002"));
+        basket.addDiscount(createDiscount(DiscountType.FIFTY_CENTS_OFF, "A0001"));
+        basket.addDiscount(createDiscount(DiscountType.FIFTY_CENTS_OFF, "A0003"));
+
+        // 2 of 7 units free, 0.50 off both units, never more off than the price
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("44.93"));
+        assertThat(basket.getTotal()).isEqualTo(new BigDecimal("44.93"));
+    }
+
+    @Test
+    void shouldItemizeReceiptWithAppliedDiscountAndSameTotal() {
+        var basket = new Basket();
+        addProducts(basket, "A0002", "3.99", 3);
+        addProducts(basket, "A0001", "12.99", 2);
+        addProducts(basket, "A0003", "9.99", 1);
+        var tenPercentOff = createDiscount(DiscountType.TEN_PERCENT_OFF, "A0001");
+        tenPercentOff.setId(1L);
+        var buyOneGetOneFree = createDiscount(DiscountType.BUY_1_GET_1_FREE, "A0002");
+        buyOneGetOneFree.setId(2L);
+        basket.addDiscount(tenPercentOff);
+        basket.addDiscount(buyOneGetOneFree);
+
+        var receipt = pricingEngine.createReceipt(basket);
+
+        assertThat(receipt.lines()).extracting(Receipt.Line::productCode).containsExactly("A0001", "A0002", "A0003");
+        var line = receipt.lines().getFirst();
+        assertThat(line.quantity()).isEqualTo(2);
+        assertThat(line.unitPrice()).isEqualByComparingTo("12.99");
+        assertThat(line.subtotal()).isEqualByComparingTo("25.98");
+        assertThat(line.discount()).isSameAs(tenPercentOff);
+        assertThat(line.savings()).isEqualByComparingTo("2.598");
+        assertThat(receipt.lines().get(1).discount()).isSameAs(buyOneGetOneFree);
+        assertThat(receipt.lines().get(1).savings()).isEqualByComparingTo("3.99");
+        assertThat(receipt.lines().get(2).discount()).isNull();
+        assertThat(receipt.lines().get(2).savings()).isEqualByComparingTo("0");
+        assertThat(receipt.subtotal()).isEqualByComparingTo("47.94");
+        assertThat(receipt.total()).isEqualTo(pricingEngine.calculateTotal(basket));
+    }
+
+    private void addProducts(Basket basket, String code, String price, int quantity) {
+        var product = new Product();
+        product.setCode(code);
+        product.setPrice(new BigDecimal(price));
+        for (var i = 0; i < quantity; i++) {
+            basket.addProduct(product);
+        }
+    }
+
+    private Discount createDiscount(DiscountType type, String productCode) {
+        var discount = new Discount();
+        discount.setType(type);
+        discount.setProductCode(productCode);
+        return discount;
+    }
+}
@@ -0,0 +1,83 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.discount.DiscountType;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// compares the long cents pricing with the original BigDecimal pricing on random baskets
+class PricingEquivalenceTest {
+
+    // the discount types the reference pricing knows
+    private static final DiscountType[] DISCOUNT_TYPES = { DiscountType.TEN_PERCENT_OFF,
+            DiscountType.BUY_1_GET_1_FREE };
+
+    private final PricingEngine pricingEngine = new PricingEngine();
+
+    @Test
+    void shouldCalculateSameTotalsAsBigDecimalReferencePricing() {
+        var random = new Random(42);
+        for (var run = 0; run < 2_000; run++) {
+            var products = new ArrayList<Product>();
+            var skus = 1 + random.nextInt(8);
+            for (var i = 0; i < skus; i++) {
+                var product = new Product();
+                product.setCode(String.format("P%04d", i));
+                product.setPrice(BigDecimal.valueOf(random.nextInt(100_000), 2));
+                products.add(product);
+            }
+            var scannedProducts = new ArrayList<Product>();
+            var basket = new Basket();
+            var units = random.nextInt(40);
+            for (var i = 0; i < units; i++) {
+                var product = products.get(random.nextInt(skus));
+                scannedProducts.add(product);
+                basket.addProduct(product);
+            }
+            var discounts = new ArrayList<Discount>();
+            for (var i = 0; i < skus; i++) {
+                if (random.nextInt(3) > 0) {
+                    var discount = new Discount();
+                    discount.setType(DISCOUNT_TYPES[random.nextInt(DISCOUNT_TYPES.length)]);
+                    discount.setProductCode(products.get(i).getCode());
+                    discounts.add(discount);
+                    basket.addDiscount(discount);
+                }
+            }
+
+            var expectedTotal = ReferencePricing.calculateTotal(scannedProducts, discounts);
+
+            assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(expectedTotal);
+            assertThat(basket.getTotal()).isEqualTo(expectedTotal);
+        }
+    }
+
+    @Test
+    void shouldRoundTotalHalfUpOnlyOnce() {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(new BigDecimal("0.05"));
+        var discount = new Discount();
+        discount.setType(DiscountType.TEN_PERCENT_OFF);
+        discount.setProductCode("A0001");
+
+        var basket = new Basket();
+        basket.addProduct(product);
+        basket.addDiscount(discount);
+
+        // 0.05 - 0.005 = 0.045 is rounded half up to 0.05
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("0.05"));
+
+        basket.addProduct(product);
+
+        // 0.10 - 0.010 = 0.09
+        assertThat(pricingEngine.calculateTotal(basket)).isEqualTo(new BigDecimal("0.09"));
+    }
+}
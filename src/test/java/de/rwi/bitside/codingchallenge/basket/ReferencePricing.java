@@ -0,0 +1,53 @@
+package de.rwi.bitside.codingchallenge.basket;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.rwi.bitside.codingchallenge.discount.Discount;
+import de.rwi.bitside.codingchallenge.product.Product;
+
+// the original BigDecimal pricing on a list of scanned products, kept as reference
+// for the long cents pricing
+final class ReferencePricing {
+
+    // the percentage of TEN_PERCENT_OFF as a factor
+    private static final BigDecimal TEN_PERCENT = BigDecimal.TEN.movePointLeft(2);
+
+    private ReferencePricing() {
+    }
+
+    static BigDecimal calculateTotal(List<Product> scannedProducts, Collection<Discount> discounts) {
+        var total = BigDecimal.ZERO;
+        var products = new ArrayList<>(scannedProducts);
+        // add prices of discountable products
+        for (var discount : discounts) {
+            var discountableProducts = products.stream()
+                    .filter(product -> product.getCode().equals(discount.getProductCode())).toList();
+            // the original divided zero by zero for discounts without scanned products
+            if (discountableProducts.isEmpty()) {
+                continue;
+            }
+            var subTotal = discountableProducts.stream().map(Product::getPrice).reduce(BigDecimal.ZERO,
+                    BigDecimal::add);
+            var discountValue = BigDecimal.ZERO;
+            switch (discount.getType()) {
+                case TEN_PERCENT_OFF:
+                    discountValue = subTotal.multiply(TEN_PERCENT);
+                    break;
+                case BUY_1_GET_1_FREE:
+                    discountValue = subTotal.divide(BigDecimal.valueOf(discountableProducts.size()))
+                            .multiply(BigDecimal.valueOf(discountableProducts.size() / 2));
+                    break;
+            }
+            subTotal = subTotal.subtract(discountValue);
+            total = total.add(subTotal);
+            products.removeAll(discountableProducts);
+        }
+        // add prices of non-discountable products
+        total = total.add(products.stream().map(Product::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add));
+        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+}
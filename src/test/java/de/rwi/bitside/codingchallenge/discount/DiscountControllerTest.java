@@ -4,6 +4,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
@@ -104,6 +105,15 @@ public class DiscountControllerTest {
         verify(discountService).updateDiscount(eq(1L), any(Discount.class));
     }
 
+    @Test
+    void shouldReturn409WhenDiscountInUseIsChanged() throws Exception {
+        when(discountService.updateDiscount(eq(1L), any(Discount.class))).thenThrow(new DiscountInUseException());
+
+        mockMvc.perform(put("/api/discounts/1").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"type\":\"BUY_1_GET_1_FREE\",\"productCode\":\"A0001\"}"))
+                .andExpect(status().isConflict());
+    }
+
     @Test
     void shouldDeleteDiscountWhenCorrespondingEndpointIsCalled() throws Exception {
         mockMvc.perform(delete("/api/discounts/1"))
@@ -112,6 +122,14 @@ public class DiscountControllerTest {
         verify(discountService).deleteDiscount(1L);
     }
 
+    @Test
+    void shouldReturn409WhenDiscountInUseIsDeleted() throws Exception {
+        doThrow(new DiscountInUseException()).when(discountService).deleteDiscount(1L);
+
+        mockMvc.perform(delete("/api/discounts/1"))
+                .andExpect(status().isConflict());
+    }
+
     private Discount createDiscount(Long id, DiscountType type, String productCode) {
         var discount = new Discount();
         discount.setId(id);
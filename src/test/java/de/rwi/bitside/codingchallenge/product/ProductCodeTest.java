@@ -0,0 +1,58 @@
+package de.rwi.bitside.codingchallenge.product;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ProductCodeTest {
+
+    @Test
+    void shouldUnpackPackedCodes() {
+        for (var code : new String[] { "A0001", "a-b-c", "zzzzzzzzzz", "----------", "0", "00000" }) {
+            var packedCode = ProductCode.pack(code);
+
+            assertThat(packedCode).isPositive();
+            assertThat(ProductCode.unpack(packedCode)).isEqualTo(code);
+        }
+    }
+
+    @Test
+    void shouldPackCodesWithLeadingZerosDifferently() {
+        assertThat(ProductCode.pack("0001")).isNotEqualTo(ProductCode.pack("001"));
+    }
+
+    @Test
+    void shouldNotPackLongCodesOrCodesWithOtherCharacters() {
+        assertThat(ProductCode.pack("A000000001X")).isEqualTo(ProductCode.NOT_PACKABLE);
+        assertThat(ProductCode.pack("A 001")).isEqualTo(ProductCode.NOT_PACKABLE);
+        assertThat(ProductCode.pack("A_001")).isEqualTo(ProductCode.NOT_PACKABLE);
+        assertThat(ProductCode.pack("Ä0001")).isEqualTo(ProductCode.NOT_PACKABLE);
+        assertThat(ProductCode.pack("")).isEqualTo(ProductCode.NOT_PACKABLE);
+    }
+
+    @Test
+    void shouldMapPackedCodesLikeHashMap() {
+        var map = new ProductCodeMap<Integer>();
+        var expected = new HashMap<Long, Integer>();
+        var random = new Random(42);
+        for (var i = 0; i < 100_000; i++) {
+            var packedCode = ProductCode.pack(String.format("P%04d", random.nextInt(5_000)));
+            if (random.nextInt(3) == 0) {
+                map.remove(packedCode);
+                expected.remove(packedCode);
+            } else {
+                map.put(packedCode, i);
+                expected.put(packedCode, i);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (var i = 0; i < 5_000; i++) {
+            var packedCode = ProductCode.pack(String.format("P%04d", i));
+            assertThat(map.get(packedCode)).isEqualTo(expected.get(packedCode));
+        }
+    }
+}
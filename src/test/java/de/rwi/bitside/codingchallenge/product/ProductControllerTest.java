@@ -21,6 +21,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -34,6 +35,9 @@ public class ProductControllerTest {
     @MockBean
     private ProductService productService;
 
+    @MockBean
+    private ProductImportService productImportService;
+
     @Test
     void shouldListProductsWhenCorrespondingEndpointIsCalled() throws Exception {
         var product1 = createProduct(1L, "A0001", new BigDecimal("12.99"));
@@ -92,6 +96,39 @@ public class ProductControllerTest {
         verify(productService).createProduct(any(Product.class));
     }
 
+    @Test
+    void shouldImportProductsWhenCorrespondingEndpointIsCalledWithCsv() throws Exception {
+        var result = new ProductImportResult(2, 1, List.of(new ProductImportResult.Rejection(3, "price: not a number")),
+                5, 600);
+
+        when(productImportService.importProducts(any(InputStream.class), eq(ProductImportFormat.CSV)))
+                .thenReturn(result);
+
+        mockMvc.perform(post("/api/products/import").contentType("text/csv")
+                .content("code,price\nA0001,12.99\nA0002,3.99\nA0003,abc\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.rejections[0].line", is(3)));
+
+        verify(productImportService).importProducts(any(InputStream.class), eq(ProductImportFormat.CSV));
+    }
+
+    @Test
+    void shouldImportProductsWhenCorrespondingEndpointIsCalledWithNdjson() throws Exception {
+        var result = new ProductImportResult(1, 0, List.of(), 5, 200);
+
+        when(productImportService.importProducts(any(InputStream.class), eq(ProductImportFormat.NDJSON)))
+                .thenReturn(result);
+
+        mockMvc.perform(post("/api/products/import").contentType(MediaType.APPLICATION_NDJSON)
+                .content("{\"code\":\"A0001\",\"price\":12.99}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)));
+
+        verify(productImportService).importProducts(any(InputStream.class), eq(ProductImportFormat.NDJSON));
+    }
+
     @Test
     void shouldUpdateProductWhenCorrespondingEndpointIsCalled() throws Exception {
         var product = createProduct(1L, "A0001", new BigDecimal("12.99"));
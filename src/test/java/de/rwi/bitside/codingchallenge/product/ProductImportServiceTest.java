@@ -0,0 +1,95 @@
+package de.rwi.bitside.codingchallenge.product;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@TestPropertySource(properties = "product.import.batch-size=2")
+class ProductImportServiceTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void deleteProducts() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void shouldInsertProductsAndRejectInvalidRowsWhenImportingCsv() throws Exception {
+        var csv = """
+                code,price
+                A0001,12.99
+                A0002,3.99
+                A3,1.00
+                A0004,abc
+                A0005,-1
+                A0006,9.99
+                """;
+
+        var result = productImportService.importProducts(stream(csv), ProductImportFormat.CSV);
+
+        assertThat(result.imported()).isEqualTo(3);
+        assertThat(result.rejected()).isEqualTo(3);
+        assertThat(result.rejections()).extracting(ProductImportResult.Rejection::line).containsExactly(4L, 5L, 6L);
+        assertThat(productRepository.count()).isEqualTo(3);
+        assertThat(productRepository.findByCode("A0006")).get().extracting(Product::getPrice)
+                .isEqualTo(new BigDecimal("9.99"));
+    }
+
+    @Test
+    void shouldImportFirstRowOfCsvWithoutHeader() throws Exception {
+        var csv = """
+                CODE1,1.00
+                codex,2.50
+                """;
+
+        var result = productImportService.importProducts(stream(csv), ProductImportFormat.CSV);
+
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(productRepository.findByCode("CODE1")).isPresent();
+    }
+
+    @Test
+    void shouldUpdateExistingProductsByCodeWhenImportingNdjson() throws Exception {
+        var product = new Product();
+        product.setCode("A0001");
+        product.setPrice(new BigDecimal("12.99"));
+        var existingProduct = productService.createProduct(product);
+        productService.getProductByCode("A0001");
+
+        var ndjson = """
+                {"code":"A0001","price":9.99}
+                {"code":"A0002","price":3.99}
+                not json
+                """;
+
+        var result = productImportService.importProducts(stream(ndjson), ProductImportFormat.NDJSON);
+
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(result.rejected()).isEqualTo(1);
+        assertThat(productRepository.count()).isEqualTo(2);
+        var updatedProduct = productService.getProductByCode("A0001");
+        assertThat(updatedProduct.getId()).isEqualTo(existingProduct.getId());
+        assertThat(updatedProduct.getPrice()).isEqualTo(new BigDecimal("9.99"));
+    }
+
+    private ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,104 @@
+package de.rwi.bitside.codingchallenge.product;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+@SpringBootTest
+class ProductServiceTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockBean
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void clearCache() {
+        cacheManager.getCache(ProductService.PRODUCTS_BY_CODE_CACHE).clear();
+    }
+
+    @Test
+    void shouldLookUpProductByCodeOnlyOnceWhenScannedRepeatedly() {
+        var product = createProduct(1L, "A0001", new BigDecimal("12.99"));
+
+        given(productRepository.findByCode("A0001")).willReturn(Optional.of(product));
+
+        productService.getProductByCode("A0001");
+        productService.getProductByCode("A0001");
+        productService.getProductByCode("A0001");
+
+        verify(productRepository, times(1)).findByCode("A0001");
+        var stats = ((CaffeineCache) cacheManager.getCache(ProductService.PRODUCTS_BY_CODE_CACHE)).getNativeCache()
+                .stats();
+        assertThat(stats.hitCount()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void shouldLookUpProductByCodeAgainWhenProductWasUpdated() {
+        var product = createProduct(1L, "A0001", new BigDecimal("12.99"));
+
+        given(productRepository.findByCode("A0001")).willReturn(Optional.of(product));
+        given(productRepository.findById(1L)).willReturn(Optional.of(product));
+        given(productRepository.save(any(Product.class))).willReturn(product);
+
+        productService.getProductByCode("A0001");
+        productService.updateProduct(1L, createProduct(1L, "A0001", new BigDecimal("9.99")));
+        productService.getProductByCode("A0001");
+
+        verify(productRepository, times(2)).findByCode("A0001");
+    }
+
+    @Test
+    void shouldLookUpProductByCodeAgainWhenProductWasDeleted() {
+        var product = createProduct(1L, "A0001", new BigDecimal("12.99"));
+
+        given(productRepository.findByCode("A0001")).willReturn(Optional.of(product));
+
+        productService.getProductByCode("A0001");
+        productService.deleteProduct(1L);
+        productService.getProductByCode("A0001");
+
+        verify(productRepository, times(2)).findByCode("A0001");
+    }
+
+    @Test
+    void shouldResolveOnlyUncachedCodesWithSingleQueryWhenLookingUpManyCodes() {
+        var product1 = createProduct(1L, "A0001", new BigDecimal("12.99"));
+        var product2 = createProduct(2L, "A0002", new BigDecimal("3.99"));
+
+        given(productRepository.findByCode("A0001")).willReturn(Optional.of(product1));
+        given(productRepository.findByCodeIn(List.of("A0002", "X0001"))).willReturn(List.of(product2));
+
+        productService.getProductByCode("A0001");
+        var products = productService.getProductsByCodes(List.of("A0001", "A0002", "X0001"));
+
+        assertThat(products).containsOnlyKeys("A0001", "A0002");
+        verify(productRepository, times(1)).findByCodeIn(List.of("A0002", "X0001"));
+    }
+
+    private Product createProduct(Long id, String code, BigDecimal price) {
+        var product = new Product();
+        product.setId(id);
+        product.setCode(code);
+        product.setPrice(price);
+        return product;
+    }
+}